@@ -34,6 +34,7 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package org.antlr.mojo.antlr3;
 
+import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -205,6 +206,17 @@ public class Antlr3Mojo
      * @required
      */
     private File outputDirectory;
+    /**
+     * Location for generated resources such as the <code>.dfa</code> tables
+     * written for grammars with <code>dfaTables=resource</code>. They are
+     * placed in the same package directory as the generated recognizer and
+     * this directory is added to the project resources so they end up on
+     * the classpath next to the recognizer class.
+     *
+     * @parameter default-value="${project.build.directory}/generated-resources/antlr3"
+     * @required
+     */
+    private File resourceOutputDirectory;
     /**
      * Location for imported token files, e.g. <code>.tokens</code> and imported grammars.
      * Note that ANTLR will not try to process grammars that it finds to be imported
@@ -222,6 +234,10 @@ public class Antlr3Mojo
         return outputDirectory;
     }
 
+    public File getResourceOutputDirectory() {
+        return resourceOutputDirectory;
+    }
+
     public File getLibDirectory() {
         return libDirectory;
     }
@@ -229,6 +245,12 @@ public class Antlr3Mojo
     void addSourceRoot(File outputDir) {
         project.addCompileSourceRoot(outputDir.getPath());
     }
+
+    void addResourceRoot(File resourceDir) {
+        Resource resource = new Resource();
+        resource.setDirectory(resourceDir.getPath());
+        project.addResource(resource);
+    }
     /**
      * An instance of the ANTLR tool build
      */
@@ -337,6 +359,11 @@ public class Antlr3Mojo
         //
         tool.setForceRelativeOutput(true);
 
+        // Resources such as DFA tables go in their own tree so Maven
+        // packages them rather than trying to compile them.
+        //
+        tool.setResourceOutputDirectory(resourceOutputDirectory.getAbsolutePath());
+
         // Where do we want ANTLR to look for .tokens and import grammars?
         //
         tool.setLibDirectory(libDirectory.getAbsolutePath());
@@ -392,6 +419,12 @@ public class Antlr3Mojo
             // the output directory.
             //
             addSourceRoot(this.getOutputDirectory());
+
+            // And any resources the generated code loads at runtime
+            //
+            if (resourceOutputDirectory.exists()) {
+                addResourceRoot(this.getResourceOutputDirectory());
+            }
         }
 
     }
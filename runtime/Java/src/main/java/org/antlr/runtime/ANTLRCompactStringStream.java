@@ -0,0 +1,223 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.nio.charset.Charset;
+
+/** An ANTLRStringStream that stores its input one byte per char when
+ *  every char fits in ISO-8859-1 (which includes ASCII).  That halves
+ *  the heap cost of buffering a document.  The constructors make one
+ *  pass over the input; the first char above 0xFF flips the stream
+ *  back to the usual char[] buffer of the superclass.
+ *
+ *  Since this is an ANTLRStringStream, you can use it wherever you use
+ *  that class now.  CommonToken.getText() goes through substring() so
+ *  token text comes out the same either way.
+ */
+public class ANTLRCompactStringStream extends ANTLRStringStream {
+	protected static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	/** The data being scanned if it fits in Latin-1; null if we fell
+	 *  back to the char[] in ANTLRStringStream.data.
+	 */
+	protected byte[] bytes;
+
+	public ANTLRCompactStringStream() {
+	}
+
+	public ANTLRCompactStringStream(String input) {
+		this();
+		int n = input.length();
+		byte[] b = new byte[n];
+		for (int i=0; i<n; i++) {
+			char c = input.charAt(i);
+			if ( c>0xFF ) {
+				b = null; // not Latin-1; store as chars
+				break;
+			}
+			b[i] = (byte)c;
+		}
+		this.n = n;
+		if ( b!=null ) {
+			this.bytes = b;
+		}
+		else {
+			this.data = input.toCharArray();
+		}
+	}
+
+	/** Compact data into a byte[] if we can; else use it as is. No chars
+	 *  are copied in the latter case.
+	 */
+	public ANTLRCompactStringStream(char[] data, int numberOfActualCharsInArray) {
+		this();
+		this.n = numberOfActualCharsInArray;
+		byte[] b = new byte[n];
+		for (int i=0; i<n; i++) {
+			char c = data[i];
+			if ( c>0xFF ) {
+				b = null;
+				break;
+			}
+			b[i] = (byte)c;
+		}
+		if ( b!=null ) {
+			this.bytes = b;
+		}
+		else {
+			this.data = data;
+		}
+	}
+
+	/** Use bytes directly as ISO-8859-1 (or ASCII) data; nothing is copied. */
+	public ANTLRCompactStringStream(byte[] latin1, int numberOfActualBytesInArray) {
+		this();
+		this.bytes = latin1;
+		this.n = numberOfActualBytesInArray;
+	}
+
+	public ANTLRStringStream share() {
+		if ( bytes==null ) {
+			return super.share();
+		}
+		ANTLRCompactStringStream s = new ANTLRCompactStringStream(bytes, n);
+		s.name = name;
+		s.lineIndexed = lineIndexed;
+		return s;
+	}
+
+	/** Are we storing one byte per char? */
+	public boolean isCompact() {
+		return bytes!=null;
+	}
+
+	public void consume() {
+		if ( bytes==null || lineIndexed ) {
+			super.consume();
+			return;
+		}
+		if ( p < n ) {
+			charPositionInLine++;
+			if ( bytes[p]=='\n' ) {
+				line++;
+				charPositionInLine=0;
+			}
+			p++;
+		}
+	}
+
+	public int LA(int i) {
+		if ( bytes==null ) {
+			return super.LA(i);
+		}
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+			if ( (p+i-1) < 0 ) {
+				return CharStream.EOF; // invalid; no char before first char
+			}
+		}
+		if ( (p+i-1) >= n ) {
+			return CharStream.EOF;
+		}
+		return bytes[p+i-1] & 0xFF;
+	}
+
+	protected void indexLines(int stop) {
+		if ( bytes==null || (lineStarts!=null && stop<=lineIndexEnd) ) {
+			super.indexLines(stop);
+			return;
+		}
+		if ( lineStarts==null ) {
+			super.indexLines(0);
+		}
+		for (int i=lineIndexEnd; i<stop; i++) {
+			if ( bytes[i]=='\n' ) {
+				addLineStart(i+1);
+			}
+		}
+		lineIndexEnd = stop;
+	}
+
+	public String substring(int start, int stop) {
+		if ( bytes==null ) {
+			return super.substring(start, stop);
+		}
+		return new String(bytes, start, stop-start+1, LATIN1);
+	}
+
+	public CharSequence substringView(int start, int stop) {
+		if ( bytes==null ) {
+			return super.substringView(start, stop);
+		}
+		return new Latin1View(bytes, start, stop-start+1);
+	}
+
+	public String toString() {
+		if ( bytes==null ) {
+			return super.toString();
+		}
+		return new String(bytes, 0, n, LATIN1);
+	}
+
+	/** A CharArrayView over Latin-1 bytes rather than chars */
+	protected static class Latin1View extends CharArrayView {
+		protected byte[] bytes;
+
+		public Latin1View(byte[] bytes, int offset, int length) {
+			super(new char[0], 0, 0);
+			if ( offset<0 || length<0 || offset+length>bytes.length ) {
+				throw new IndexOutOfBoundsException("view "+offset+".."+(offset+length-1)+
+													" outside buffer of size "+bytes.length);
+			}
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public char charAt(int index) {
+			if ( index<0 || index>=length ) {
+				throw new IndexOutOfBoundsException("index "+index+" not in 0.."+(length-1));
+			}
+			return (char)(bytes[offset+index] & 0xFF);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			if ( start<0 || end>length || start>end ) {
+				throw new IndexOutOfBoundsException("subSequence "+start+".."+end+" of "+length);
+			}
+			return new Latin1View(bytes, offset+start, end-start);
+		}
+
+		public String toString() {
+			return new String(bytes, offset, length, LATIN1);
+		}
+	}
+}
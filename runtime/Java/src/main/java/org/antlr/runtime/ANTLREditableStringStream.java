@@ -0,0 +1,222 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** An ANTLRStringStream whose text can be changed in place, as in an
+ *  editor; IncrementalTokenStream keeps the tokens in step.  The chars
+ *  live in a gap buffer whose free space sits at the last edit, so an
+ *  edit costs the size of the edit plus the distance from the previous
+ *  one rather than the size of the document.
+ *
+ *  Line info is counted char by char as usual; setLineIndexed(true)
+ *  isn't supported since the line index would go stale on every edit.
+ */
+public class ANTLREditableStringStream extends ANTLRStringStream {
+	public static final int INITIAL_GAP_SIZE = 1024;
+
+	/** data[gapStart..gapEnd-1] is free space.  Char index i lives at
+	 *  data[i] if i<gapStart, else at data[i+gapEnd-gapStart].
+	 */
+	protected int gapStart;
+	protected int gapEnd;
+
+	/** The highest char index LA() has looked at since the last
+	 *  resetHighWaterMark(); n if it looked at EOF.
+	 */
+	protected int highWater = -1;
+
+	public ANTLREditableStringStream(String input) {
+		this.n = input.length();
+		this.data = new char[n+INITIAL_GAP_SIZE];
+		input.getChars(0, n, data, 0);
+		this.gapStart = n;
+		this.gapEnd = data.length;
+	}
+
+	/** Edit data in place; chars past numberOfActualCharsInArray are the
+	 *  gap.
+	 */
+	public ANTLREditableStringStream(char[] data, int numberOfActualCharsInArray) {
+		super(data, numberOfActualCharsInArray);
+		this.gapStart = n;
+		this.gapEnd = data.length;
+	}
+
+	/** Replace deletedLength chars at offset with text.  Tokens and marks
+	 *  past offset are not adjusted; IncrementalTokenStream does that
+	 *  for tokens.
+	 */
+	public void replace(int offset, int deletedLength, String text) {
+		if ( offset<0 || deletedLength<0 || offset+deletedLength>n ) {
+			throw new IndexOutOfBoundsException("can't replace "+offset+".."+
+												(offset+deletedLength-1)+" in 0.."+(n-1));
+		}
+		moveGap(offset);
+		gapEnd += deletedLength;
+		int len = text.length();
+		if ( gapEnd-gapStart<len ) {
+			growGap(len);
+		}
+		text.getChars(0, len, data, gapStart);
+		gapStart += len;
+		n += len-deletedLength;
+		lineStarts = null; // only built if someone asks about an index
+		lastLineLookup = 0;
+	}
+
+	/** Move the gap so it starts at char index i */
+	protected void moveGap(int i) {
+		if ( i<gapStart ) {
+			int k = gapStart-i;
+			System.arraycopy(data, i, data, gapEnd-k, k);
+			gapStart = i;
+			gapEnd -= k;
+		}
+		else if ( i>gapStart ) {
+			int k = i-gapStart;
+			System.arraycopy(data, gapEnd, data, gapStart, k);
+			gapStart = i;
+			gapEnd += k;
+		}
+	}
+
+	protected void growGap(int needed) {
+		int after = data.length-gapEnd;
+		char[] bigger = new char[Math.max(data.length*2, n+needed+INITIAL_GAP_SIZE)];
+		System.arraycopy(data, 0, bigger, 0, gapStart);
+		System.arraycopy(data, gapEnd, bigger, bigger.length-after, after);
+		gapEnd = bigger.length-after;
+		data = bigger;
+	}
+
+	protected final int charAt(int i) {
+		return i<gapStart ? data[i] : data[i+gapEnd-gapStart];
+	}
+
+	public void consume() {
+		if ( p < n ) {
+			charPositionInLine++;
+			if ( charAt(p)=='\n' ) {
+				line++;
+				charPositionInLine=0;
+			}
+			p++;
+		}
+	}
+
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+			if ( (p+i-1) < 0 ) {
+				return CharStream.EOF; // invalid; no char before first char
+			}
+		}
+		else if ( p+i-1>highWater ) {
+			highWater = Math.min(p+i-1, n);
+		}
+		if ( (p+i-1) >= n ) {
+			return CharStream.EOF;
+		}
+		return charAt(p+i-1);
+	}
+
+	/** How far has LA() looked since resetHighWaterMark()?  Tells
+	 *  IncrementalTokenStream which chars a token depended on.
+	 */
+	public int getHighWaterMark() {
+		return highWater;
+	}
+
+	public void resetHighWaterMark() {
+		highWater = p-1;
+	}
+
+	public String substring(int start, int stop) {
+		int len = stop-start+1;
+		if ( stop<gapStart ) {
+			return new String(data, start, len);
+		}
+		if ( start>=gapStart ) {
+			return new String(data, start+gapEnd-gapStart, len);
+		}
+		char[] buf = new char[len];
+		int before = gapStart-start;
+		System.arraycopy(data, start, buf, 0, before);
+		System.arraycopy(data, gapEnd, buf, before, len-before);
+		return new String(buf);
+	}
+
+	/** A view unless the chars straddle the gap */
+	public CharSequence substringView(int start, int stop) {
+		int len = stop-start+1;
+		if ( stop<gapStart ) {
+			return new CharArrayView(data, start, len);
+		}
+		if ( start>=gapStart ) {
+			return new CharArrayView(data, start+gapEnd-gapStart, len);
+		}
+		return substring(start, stop);
+	}
+
+	/** A copy; edits would change the chars under a shared buffer */
+	public ANTLRStringStream share() {
+		ANTLRStringStream s = new ANTLRStringStream(toString());
+		s.name = name;
+		return s;
+	}
+
+	public void setLineIndexed(boolean lineIndexed) {
+		if ( lineIndexed ) {
+			throw new UnsupportedOperationException("can't line-index an editable stream");
+		}
+	}
+
+	protected void indexLines(int stop) {
+		if ( lineStarts==null ) {
+			lineStarts = new int[16];
+			lineStarts[0] = 0;
+			numLines = 1;
+			lineIndexEnd = 0;
+		}
+		for (int i=lineIndexEnd; i<stop; i++) {
+			if ( charAt(i)=='\n' ) {
+				addLineStart(i+1);
+			}
+		}
+		if ( stop>lineIndexEnd ) {
+			lineIndexEnd = stop;
+		}
+	}
+
+	public String toString() {
+		return substring(0, n-1);
+	}
+}
@@ -28,9 +28,24 @@
 package org.antlr.runtime;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 /** A kind of ReaderStream that pulls from an InputStream.
  *  Useful for reading from stdin and specifying file encodings etc...
+ *
+ *  If you have the bytes already (byte[], ByteBuffer) or a File, use
+ *  those constructors instead.  The byte count is known up front, so we
+ *  size the char buffer once from the decoder's maxCharsPerByte() and
+ *  decode straight into it.  That avoids the grow-and-copy loop in
+ *  ANTLRReaderStream.load().
   */
 public class ANTLRInputStream extends ANTLRReaderStream {
 	public ANTLRInputStream() {
@@ -67,4 +82,88 @@ public class ANTLRInputStream extends ANTLRReaderStream {
 		}
 		load(isr, size, readBufferSize);
 	}
+
+	public ANTLRInputStream(byte[] bytes, String encoding) throws IOException {
+		this(ByteBuffer.wrap(bytes), encoding);
+	}
+
+	public ANTLRInputStream(byte[] bytes, int offset, int length, String encoding)
+		throws IOException
+	{
+		this(ByteBuffer.wrap(bytes, offset, length), encoding);
+	}
+
+	/** Decode bytes.position()..bytes.limit()-1 */
+	public ANTLRInputStream(ByteBuffer bytes, String encoding) throws IOException {
+		load(bytes, encoding);
+	}
+
+	public ANTLRInputStream(File file, String encoding) throws IOException {
+		load(file, encoding);
+		name = file.getPath();
+	}
+
+	/** Map the file and decode it in one go */
+	public void load(File file, String encoding) throws IOException {
+		if ( file==null ) {
+			return;
+		}
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), encoding);
+		}
+		finally {
+			fis.close();
+		}
+	}
+
+	/** Decode all remaining bytes into a buffer allocated once.  A null
+	 *  encoding means the platform default, as with InputStreamReader;
+	 *  malformed input is replaced, not reported, for the same reason.
+	 */
+	public void load(ByteBuffer bytes, String encoding) throws IOException {
+		if ( bytes==null ) {
+			return;
+		}
+		Charset charset;
+		try {
+			charset = encoding!=null ? Charset.forName(encoding) : Charset.defaultCharset();
+		}
+		catch (IllegalCharsetNameException icne) {
+			throw new UnsupportedEncodingException(encoding);
+		}
+		catch (UnsupportedCharsetException uce) {
+			throw new UnsupportedEncodingException(encoding);
+		}
+		CharsetDecoder decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		data = new char[(int)Math.ceil(bytes.remaining()*(double)decoder.maxCharsPerByte())];
+		CharBuffer out = CharBuffer.wrap(data);
+		CoderResult result = decoder.decode(bytes, out, true);
+		while ( result.isOverflow() ) { // decoder lied about maxCharsPerByte
+			out = grow(out);
+			result = decoder.decode(bytes, out, true);
+		}
+		result = decoder.flush(out);
+		while ( result.isOverflow() ) {
+			out = grow(out);
+			result = decoder.flush(out);
+		}
+		if ( result.isError() ) {
+			result.throwException();
+		}
+		super.n = out.position();
+	}
+
+	/** Double data, keeping what's been decoded so far */
+	protected CharBuffer grow(CharBuffer out) {
+		char[] newdata = new char[data.length*2+16];
+		System.arraycopy(data, 0, newdata, 0, out.position());
+		data = newdata;
+		CharBuffer newout = CharBuffer.wrap(data);
+		newout.position(out.position());
+		return newout;
+	}
 }
@@ -0,0 +1,477 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A CharStream that maps a file into memory rather than reading it
+ *  into a char[] like ANTLRFileStream.  Characters are decoded lazily
+ *  straight out of the mapped pages so heap use does not depend on the
+ *  size of the input.  Use this for very large (multi-GB) inputs.
+ *
+ *  Single-byte encodings (US-ASCII, ISO-8859-1) map char index i to
+ *  byte i directly.  For UTF-8, char indexes and byte offsets diverge
+ *  so we record the byte offset of every CHECKPOINT_INTERVAL'th char
+ *  as we scan forward. Random access then decodes forward from the
+ *  nearest checkpoint.  Characters outside the BMP show up as two chars
+ *  (a surrogate pair), just as they would in a String, so char indexes
+ *  agree with ANTLRStringStream.  Malformed UTF-8 decodes to U+FFFD.
+ *
+ *  mark(), rewind(), seek() and substring() behave exactly as they do
+ *  in ANTLRStringStream.
+ *
+ *  The index is still an int so the input must decode to fewer
+ *  than 2^31 chars.
+ */
+public class ANTLRMappedFileStream implements CharStream, RandomAccessStream {
+	/** How many chars between recorded UTF-8 byte offsets */
+	public static final int CHECKPOINT_INTERVAL = 4096;
+
+	/** Largest region we map with a single MappedByteBuffer */
+	protected static final int REGION_SHIFT = 30;
+	protected static final long REGION_SIZE = 1L<<REGION_SHIFT;
+	protected static final long REGION_MASK = REGION_SIZE-1;
+
+	public static final int REPLACEMENT_CHAR = 0xFFFD;
+
+	protected String fileName;
+
+	/** The mapped input; region i holds bytes i*REGION_SIZE.. */
+	protected MappedByteBuffer[] regions;
+
+	/** How many bytes are in the file */
+	protected long byteLength;
+
+	/** True if each char is exactly one byte (ASCII, Latin-1) */
+	protected boolean singleByte;
+
+	/** How many chars there are; -1 until we have scanned to the end
+	 *  of a UTF-8 file.
+	 */
+	protected int n = -1;
+
+	/** 0..n-1 index into stream of next char */
+	protected int p = 0;
+
+	/** line number 1..n within the input */
+	protected int line = 1;
+
+	/** The index of the character relative to the beginning of the line 0..n-1 */
+	protected int charPositionInLine = 0;
+
+	/** tracks how deep mark() calls are nested */
+	protected int markDepth = 0;
+
+	/** A list of CharStreamState objects that tracks the stream state
+	 *  values line, charPositionInLine, and p that can change as you
+	 *  move through the input stream.  Indexed from 1..markDepth.
+	 *  A null is kept @ index 0.  Create upon first call to mark().
+	 */
+	protected List markers;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	// UTF-8 bookkeeping
+
+	/** checkpointChar[k] is the char index of the first code point
+	 *  starting at or after char k*CHECKPOINT_INTERVAL; checkpointByte[k]
+	 *  is its byte offset.
+	 */
+	protected int[] checkpointChar;
+	protected long[] checkpointByte;
+	protected int numCheckpoints;
+
+	/** Char index/byte offset of the code point we last located */
+	protected int cursorChar;
+	protected long cursorByte;
+
+	/** How many bytes the last call to decode() consumed */
+	protected int decodedLength;
+
+	/** What is name or source of this char stream? */
+	public String name;
+
+	public ANTLRMappedFileStream(String fileName) throws IOException {
+		this(fileName, null);
+	}
+
+	/** Encoding must be US-ASCII, ISO-8859-1 or UTF-8 (the default). */
+	public ANTLRMappedFileStream(String fileName, String encoding) throws IOException {
+		this.fileName = fileName;
+		load(fileName, encoding);
+	}
+
+	public void load(String fileName, String encoding)
+		throws IOException
+	{
+		if ( fileName==null ) {
+			return;
+		}
+		if ( encoding==null || encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8") ) {
+			singleByte = false;
+		}
+		else if ( encoding.equalsIgnoreCase("US-ASCII") || encoding.equalsIgnoreCase("ASCII") ||
+				  encoding.equalsIgnoreCase("ISO-8859-1") || encoding.equalsIgnoreCase("ISO8859_1") ||
+				  encoding.equalsIgnoreCase("Latin1") )
+		{
+			singleByte = true;
+		}
+		else {
+			throw new UnsupportedEncodingException("mapped streams can't decode "+encoding);
+		}
+		RandomAccessFile f = new RandomAccessFile(new File(fileName), "r");
+		try {
+			FileChannel channel = f.getChannel();
+			byteLength = channel.size();
+			if ( singleByte && byteLength>Integer.MAX_VALUE ) {
+				throw new IOException(fileName+" has more than "+Integer.MAX_VALUE+" chars");
+			}
+			int numRegions = (int)((byteLength+REGION_SIZE-1)>>>REGION_SHIFT);
+			regions = new MappedByteBuffer[numRegions];
+			for (int i=0; i<numRegions; i++) {
+				long start = ((long)i)<<REGION_SHIFT;
+				long size = Math.min(REGION_SIZE, byteLength-start);
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			}
+		}
+		finally {
+			f.close(); // mapping stays valid after the channel is closed
+		}
+		if ( singleByte ) {
+			n = (int)byteLength;
+		}
+		else {
+			checkpointChar = new int[16];
+			checkpointByte = new long[16];
+			numCheckpoints = 1; // char 0 starts at byte 0
+			cursorChar = 0;
+			cursorByte = 0;
+		}
+	}
+
+	/** Reset the stream so that it's in the same state it was
+	 *  when the object was created *except* the mapping is not
+	 *  touched.
+	 */
+	public void reset() {
+		p = 0;
+		line = 1;
+		charPositionInLine = 0;
+		markDepth = 0;
+	}
+
+	public void consume() {
+		int c = charAt(p);
+		if ( c!=CharStream.EOF ) {
+			charPositionInLine++;
+			if ( c=='\n' ) {
+				line++;
+				charPositionInLine=0;
+			}
+			p++;
+		}
+	}
+
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+			if ( (p+i-1) < 0 ) {
+				return CharStream.EOF; // invalid; no char before first char
+			}
+		}
+		return charAt(p+i-1);
+	}
+
+	public int LT(int i) {
+		return LA(i);
+	}
+
+	/** Return the current input symbol index 0..n where n indicates the
+	 *  last symbol has been read.  The index is the index of char to
+	 *  be returned from LA(1).
+	 */
+	public int index() {
+		return p;
+	}
+
+	/** For UTF-8 input, the first call scans the rest of the file to
+	 *  count chars.  Nothing is buffered; only checkpoints are recorded.
+	 */
+	public int size() {
+		if ( n<0 ) {
+			locate(Integer.MAX_VALUE); // scan to EOF; sets n
+		}
+		return n;
+	}
+
+	public int mark() {
+		if ( markers==null ) {
+			markers = new ArrayList();
+			markers.add(null); // depth 0 means no backtracking, leave blank
+		}
+		markDepth++;
+		CharStreamState state = null;
+		if ( markDepth>=markers.size() ) {
+			state = new CharStreamState();
+			markers.add(state);
+		}
+		else {
+			state = (CharStreamState)markers.get(markDepth);
+		}
+		state.p = p;
+		state.line = line;
+		state.charPositionInLine = charPositionInLine;
+		lastMarker = markDepth;
+		return markDepth;
+	}
+
+	public void rewind(int m) {
+		CharStreamState state = (CharStreamState)markers.get(m);
+		// restore stream state
+		seek(state.p);
+		line = state.line;
+		charPositionInLine = state.charPositionInLine;
+		release(m);
+	}
+
+	public void rewind() {
+		rewind(lastMarker);
+	}
+
+	public void release(int marker) {
+		// unwind any other markers made after m and release m
+		markDepth = marker;
+		// release this marker
+		markDepth--;
+	}
+
+	/** consume() ahead until p==index; can't just set p=index as we must
+	 *  update line and charPositionInLine.
+	 */
+	public void seek(int index) {
+		if ( index<=p ) {
+			p = index; // just jump; don't update stream state (line, ...)
+			return;
+		}
+		// seek forward, consume until p hits index
+		while ( p<index ) {
+			int before = p;
+			consume();
+			if ( p==before ) break; // hit EOF
+		}
+	}
+
+	public String substring(int start, int stop) {
+		char[] buf = new char[stop-start+1];
+		for (int i=start; i<=stop; i++) {
+			buf[i-start] = (char)charAt(i);
+		}
+		return new String(buf);
+	}
+
+	/** Return the char at absolute char index i or EOF if i is off the
+	 *  end of the input.
+	 */
+	protected int charAt(int i) {
+		if ( i<0 ) {
+			return CharStream.EOF;
+		}
+		if ( singleByte ) {
+			if ( i>=n ) {
+				return CharStream.EOF;
+			}
+			return getByte(i) & 0xFF;
+		}
+		if ( !locate(i) ) {
+			return CharStream.EOF;
+		}
+		int cp = decode(cursorByte);
+		if ( cp<Character.MIN_SUPPLEMENTARY_CODE_POINT ) {
+			return cp;
+		}
+		int hi = ((cp - Character.MIN_SUPPLEMENTARY_CODE_POINT) >>> 10) + Character.MIN_HIGH_SURROGATE;
+		if ( i==cursorChar ) {
+			return hi;
+		}
+		return ((cp - Character.MIN_SUPPLEMENTARY_CODE_POINT) & 0x3FF) + Character.MIN_LOW_SURROGATE;
+	}
+
+	/** Move the UTF-8 cursor to the code point holding char i.  Return
+	 *  false if i is at or past EOF.  Normally i is at or just past the
+	 *  cursor (sequential lexing) so this is cheap; otherwise we restart
+	 *  from the closest checkpoint at or before i.
+	 */
+	protected boolean locate(int i) {
+		if ( n>=0 && i>=n ) {
+			return false;
+		}
+		if ( i<cursorChar || i-cursorChar>CHECKPOINT_INTERVAL ) {
+			int k = i / CHECKPOINT_INTERVAL;
+			if ( k>=numCheckpoints ) {
+				k = numCheckpoints-1;
+			}
+			if ( checkpointChar[k]>i ) {
+				k--; // a surrogate pair pushed checkpoint k one past i
+			}
+			if ( k>=0 && (i<cursorChar || checkpointChar[k]>cursorChar) ) {
+				cursorChar = checkpointChar[k];
+				cursorByte = checkpointByte[k];
+			}
+		}
+		int c = cursorChar;
+		long b = cursorByte;
+		while ( true ) {
+			if ( b>=byteLength ) {
+				n = c;
+				cursorChar = c;
+				cursorByte = b;
+				return false;
+			}
+			if ( c>=numCheckpoints*CHECKPOINT_INTERVAL ) {
+				addCheckpoint(c, b);
+			}
+			int cp = decode(b);
+			int width = cp>=Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+			if ( i<c+width ) {
+				cursorChar = c;
+				cursorByte = b;
+				return true;
+			}
+			c += width;
+			b += decodedLength;
+		}
+	}
+
+	protected void addCheckpoint(int c, long b) {
+		if ( numCheckpoints>=checkpointChar.length ) {
+			int[] newChars = new int[checkpointChar.length*2];
+			System.arraycopy(checkpointChar, 0, newChars, 0, numCheckpoints);
+			checkpointChar = newChars;
+			long[] newBytes = new long[checkpointByte.length*2];
+			System.arraycopy(checkpointByte, 0, newBytes, 0, numCheckpoints);
+			checkpointByte = newBytes;
+		}
+		checkpointChar[numCheckpoints] = c;
+		checkpointByte[numCheckpoints] = b;
+		numCheckpoints++;
+	}
+
+	/** Decode the UTF-8 sequence starting at byte offset off and return
+	 *  the code point.  Sets decodedLength.  Anything malformed (bad lead
+	 *  byte, truncated or overlong sequence, encoded surrogate) decodes
+	 *  to a single U+FFFD consuming one byte.
+	 */
+	protected int decode(long off) {
+		int b0 = getByte(off) & 0xFF;
+		decodedLength = 1;
+		if ( b0<0x80 ) {
+			return b0;
+		}
+		int need;
+		int cp;
+		if ( b0>=0xC2 && b0<=0xDF ) {
+			need = 1;
+			cp = b0 & 0x1F;
+		}
+		else if ( b0>=0xE0 && b0<=0xEF ) {
+			need = 2;
+			cp = b0 & 0x0F;
+		}
+		else if ( b0>=0xF0 && b0<=0xF4 ) {
+			need = 3;
+			cp = b0 & 0x07;
+		}
+		else {
+			return REPLACEMENT_CHAR;
+		}
+		if ( off+need>=byteLength ) {
+			return REPLACEMENT_CHAR;
+		}
+		for (int j=1; j<=need; j++) {
+			int b = getByte(off+j) & 0xFF;
+			if ( (b & 0xC0)!=0x80 ) {
+				return REPLACEMENT_CHAR;
+			}
+			cp = (cp<<6) | (b & 0x3F);
+		}
+		if ( need==2 && (cp<0x800 || (cp>=Character.MIN_SURROGATE && cp<=Character.MAX_SURROGATE)) ) {
+			return REPLACEMENT_CHAR;
+		}
+		if ( need==3 && (cp<Character.MIN_SUPPLEMENTARY_CODE_POINT || cp>Character.MAX_CODE_POINT) ) {
+			return REPLACEMENT_CHAR;
+		}
+		decodedLength = need+1;
+		return cp;
+	}
+
+	protected final byte getByte(long off) {
+		return regions[(int)(off>>>REGION_SHIFT)].get((int)(off & REGION_MASK));
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	public String getSourceName() {
+		if ( name!=null ) {
+			return name;
+		}
+		return fileName;
+	}
+
+	public String toString() {
+		int size = size();
+		if ( size==0 ) {
+			return "";
+		}
+		return substring(0, size-1);
+	}
+}
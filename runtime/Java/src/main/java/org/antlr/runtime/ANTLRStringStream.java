@@ -33,8 +33,11 @@ import java.util.List;
 /** A pretty quick CharStream that pulls all data from an array
  *  directly.  Every method call counts in the lexer.  Java's
  *  strings aren't very good so I'm avoiding.
+ *
+ *  Call setLineIndexed(true) to stop tracking line info char by char;
+ *  see LineIndexedCharStream.
  */
-public class ANTLRStringStream implements CharStream {
+public class ANTLRStringStream implements LineIndexedCharStream, CharViewStream, RandomAccessStream {
 	/** The data being scanned */
 	protected char[] data;
 
@@ -63,6 +66,28 @@ public class ANTLRStringStream implements CharStream {
 	/** Track the last mark() call result value for use in rewind(). */
 	protected int lastMarker;
 
+	/** If true, consume() and mark() don't track line and
+	 *  charPositionInLine; getLine() and getCharPositionInLine() compute
+	 *  them from lineStarts upon request.
+	 */
+	protected boolean lineIndexed = false;
+
+	/** lineStarts[i] is the index of the first char on line i+1.  Grows
+	 *  as far into the input as anyone has asked about.
+	 */
+	protected int[] lineStarts;
+
+	/** How many lines are in lineStarts */
+	protected int numLines;
+
+	/** Chars 0..lineIndexEnd-1 have been scanned for newlines */
+	protected int lineIndexEnd;
+
+	/** Index into lineStarts of the last line we looked up.  Lexers ask
+	 *  about increasing char indexes so we try here before searching.
+	 */
+	protected int lastLineLookup;
+
 	/** What is name or source of this char stream? */
 	public String name;
 
@@ -83,6 +108,16 @@ public class ANTLRStringStream implements CharStream {
 		this.n = numberOfActualCharsInArray;
 	}
 
+	/** Return a new stream over the same chars, without copying them, so
+	 *  another lexer can scan this input independently.
+	 */
+	public ANTLRStringStream share() {
+		ANTLRStringStream s = new ANTLRStringStream(data, n);
+		s.name = name;
+		s.lineIndexed = lineIndexed;
+		return s;
+	}
+
 	/** Reset the stream so that it's in the same state it was
 	 *  when the object was created *except* the data array is not
 	 *  touched.
@@ -97,6 +132,10 @@ public class ANTLRStringStream implements CharStream {
     public void consume() {
 		//System.out.println("prev p="+p+", c="+(char)data[p]);
         if ( p < n ) {
+			if ( lineIndexed ) {
+				p++;
+				return;
+			}
 			charPositionInLine++;
 			if ( data[p]=='\n' ) {
 				/*
@@ -131,6 +170,10 @@ public class ANTLRStringStream implements CharStream {
 		return data[p+i-1];
     }
 
+	public CharSequence substringView(int start, int stop) {
+		return new CharArrayView(data, start, stop-start+1);
+	}
+
 	public int LT(int i) {
 		return LA(i);
 	}
@@ -162,8 +205,10 @@ public class ANTLRStringStream implements CharStream {
 			state = (CharStreamState)markers.get(markDepth);
 		}
 		state.p = p;
-		state.line = line;
-		state.charPositionInLine = charPositionInLine;
+		if ( !lineIndexed ) {
+			state.line = line;
+			state.charPositionInLine = charPositionInLine;
+		}
 		lastMarker = markDepth;
 		return markDepth;
     }
@@ -172,8 +217,10 @@ public class ANTLRStringStream implements CharStream {
 		CharStreamState state = (CharStreamState)markers.get(m);
 		// restore stream state
 		seek(state.p);
-		line = state.line;
-		charPositionInLine = state.charPositionInLine;
+		if ( !lineIndexed ) {
+			line = state.line;
+			charPositionInLine = state.charPositionInLine;
+		}
 		release(m);
 	}
 
@@ -196,6 +243,10 @@ public class ANTLRStringStream implements CharStream {
 			p = index; // just jump; don't update stream state (line, ...)
 			return;
 		}
+		if ( lineIndexed ) { // no state to update
+			p = Math.min(index, n);
+			return;
+		}
 		// seek forward, consume until p hits index
 		while ( p<index ) {
 			consume();
@@ -207,24 +258,115 @@ public class ANTLRStringStream implements CharStream {
 	}
 
 	public int getLine() {
+		if ( lineIndexed ) {
+			return getLine(p);
+		}
 		return line;
 	}
 
 	public int getCharPositionInLine() {
+		if ( lineIndexed ) {
+			return getCharPositionInLine(p);
+		}
 		return charPositionInLine;
 	}
 
 	public void setLine(int line) {
+		if ( lineIndexed ) {
+			throw new UnsupportedOperationException("can't set line of a line-indexed stream");
+		}
 		this.line = line;
 	}
 
 	public void setCharPositionInLine(int pos) {
+		if ( lineIndexed ) {
+			throw new UnsupportedOperationException("can't set char position of a line-indexed stream");
+		}
 		this.charPositionInLine = pos;
 	}
 
+	/** Turn on/off on-demand line tracking.  Switch before you start
+	 *  consuming; turning it off mid-stream resumes counting from the
+	 *  current position.
+	 */
+	public void setLineIndexed(boolean lineIndexed) {
+		if ( this.lineIndexed && !lineIndexed ) {
+			line = getLine(p);
+			charPositionInLine = getCharPositionInLine(p);
+		}
+		this.lineIndexed = lineIndexed;
+	}
+
+	public boolean isLineIndexed() {
+		return lineIndexed;
+	}
+
+	public int getLine(int index) {
+		return lineOf(index)+1;
+	}
+
+	public int getCharPositionInLine(int index) {
+		return index - lineStarts[lineOf(index)];
+	}
+
+	/** Return the index into lineStarts of the line holding char index */
+	protected int lineOf(int index) {
+		if ( index>n ) {
+			index = n;
+		}
+		if ( index>lineIndexEnd || lineStarts==null ) {
+			indexLines(index);
+		}
+		int i = lastLineLookup;
+		if ( lineStarts[i]<=index && (i+1==numLines || index<lineStarts[i+1]) ) {
+			return i;
+		}
+		// binary search for last line start <= index
+		int lo = 0;
+		int hi = numLines-1;
+		while ( lo<hi ) {
+			int mid = (lo+hi+1)>>>1;
+			if ( lineStarts[mid]<=index ) {
+				lo = mid;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		lastLineLookup = lo;
+		return lo;
+	}
+
+	/** Scan for newlines up to (not including) char stop */
+	protected void indexLines(int stop) {
+		if ( lineStarts==null ) {
+			lineStarts = new int[16];
+			lineStarts[0] = 0;
+			numLines = 1;
+			lineIndexEnd = 0;
+		}
+		for (int i=lineIndexEnd; i<stop; i++) {
+			if ( data[i]=='\n' ) {
+				addLineStart(i+1);
+			}
+		}
+		if ( stop>lineIndexEnd ) {
+			lineIndexEnd = stop;
+		}
+	}
+
+	protected void addLineStart(int index) {
+		if ( numLines>=lineStarts.length ) {
+			int[] newStarts = new int[lineStarts.length*2];
+			System.arraycopy(lineStarts, 0, newStarts, 0, numLines);
+			lineStarts = newStarts;
+		}
+		lineStarts[numLines++] = index;
+	}
+
 	public String getSourceName() {
 		return name;
 	}
 
-    public String toString() { return new String(data); }
+    public String toString() { return new String(data, 0, n); }
 }
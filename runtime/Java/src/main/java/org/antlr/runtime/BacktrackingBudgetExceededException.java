@@ -0,0 +1,81 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** The parse used up the backtracking budget set in RecognizerSharedState.
+ *  Unlike RecognitionException this is unchecked: there is no recovering
+ *  from it within the rule, so it unwinds to whoever catches it.  The
+ *  syntactic predicates it passes through rewind the input and drop the
+ *  backtracking level on the way, so a caller can carry on from where the
+ *  outermost speculation started, e.g. with a rule that doesn't
+ *  backtrack.  Call reset() to start a new budget.
+ */
+public class BacktrackingBudgetExceededException extends RuntimeException {
+	public static final int DEPTH = 1;
+	public static final int SPECULATIVE_TOKENS = 2;
+	public static final int TIME = 3;
+
+	/** Which limit ran out: DEPTH, SPECULATIVE_TOKENS or TIME */
+	public int limit;
+
+	/** The decision predicting when the limit ran out or -1 if an
+	 *  action invoked the syntactic predicate directly or a rule was
+	 *  starting.
+	 */
+	public int decisionNumber;
+
+	/** Where in the input the decision, predicate or rule started */
+	public int index;
+
+	/** How deep we were backtracking, or were about to, when the limit
+	 *  ran out
+	 */
+	public int backtracking;
+
+	public BacktrackingBudgetExceededException(int limit,
+											   int decisionNumber,
+											   int index,
+											   int backtracking)
+	{
+		this.limit = limit;
+		this.decisionNumber = decisionNumber;
+		this.index = index;
+		this.backtracking = backtracking;
+	}
+
+	public String getMessage() {
+		String what;
+		switch ( limit ) {
+			case DEPTH : what = "depth"; break;
+			case SPECULATIVE_TOKENS : what = "speculative tokens"; break;
+			default : what = "time"; break;
+		}
+		return "backtracking "+what+" limit exceeded at decision "+
+			   decisionNumber+", index "+index;
+	}
+}
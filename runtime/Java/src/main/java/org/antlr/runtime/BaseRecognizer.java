@@ -27,10 +27,10 @@
  */
 package org.antlr.runtime;
 
+import org.antlr.runtime.misc.MemoTable;
+
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /** A generic recognizer that can handle recognizers generated from
  *  lexer, parser, and tree grammars.  This is all the parsing
@@ -56,6 +56,15 @@ public abstract class BaseRecognizer {
 	 */
 	protected RecognizerSharedState state;
 
+	/** Outcomes of syntactic predicates: synpredMemo[i] maps a start
+	 *  index to 1 if the ith synpred succeeded there, 0 if it failed.
+	 *  Synpred numbers are only unique within one recognizer, so this
+	 *  isn't in the shared state; a delegate notices that the shared
+	 *  state was reset() since synpredMemoGeneration no longer matches.
+	 */
+	protected MemoTable[] synpredMemo;
+	protected int synpredMemoGeneration;
+
 	public BaseRecognizer() {
 		state = new RecognizerSharedState();
 	}
@@ -74,15 +83,22 @@ public abstract class BaseRecognizer {
 			return; // no shared state work to do
 		}
 		state._fsp = -1;
+		state._rsp = -1;
 		state.errorRecovery = false;
 		state.lastErrorIndex = -1;
 		state.failed = false;
 		state.syntaxErrors = 0;
 		// wack everything related to backtracking and memoization
 		state.backtracking = 0;
-		for (int i = 0; state.ruleMemo!=null && i < state.ruleMemo.length; i++) { // wipe cache
-			state.ruleMemo[i] = null;
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) { // wipe cache
+			state.ruleMemoTables[i] = null;
 		}
+		state.memoGeneration++; // wipes synpred caches of all delegates too
+		synpredMemo = null;
+		state.speculativeTokens = 0;
+		state.speculationStart = -1;
+		state.abortingSpeculation = false;
+		state.backtrackingDeadline = 0;
 	}
 
 
@@ -112,6 +128,9 @@ public abstract class BaseRecognizer {
 			state.failed = true;
 			return matchedSymbol;
 		}
+		if ( state.errorStrategy!=null ) {
+			return state.errorStrategy.recoverFromMismatchedToken(this, input, ttype, follow);
+		}
 		matchedSymbol = recoverFromMismatchedToken(input, ttype, follow);
 		return matchedSymbol;
 	}
@@ -172,8 +191,13 @@ public abstract class BaseRecognizer {
 	 * 		5. next match() will reset errorRecovery mode
 	 *
 	 *  If you override, make sure to update syntaxErrors if you care about that.
+	 *  An ErrorStrategy in the state gets the error instead.
 	 */
 	public void reportError(RecognitionException e) {
+		if ( state.errorStrategy!=null ) {
+			state.errorStrategy.reportError(this, e);
+			return;
+		}
 		// if we've already reported an error and have not matched a token
 		// yet successfully, don't report any errors.
 		if ( state.errorRecovery ) {
@@ -182,6 +206,9 @@ public abstract class BaseRecognizer {
 		}
 		state.syntaxErrors++; // don't count spurious
 		state.errorRecovery = true;
+		if ( !RecognitionException.captureStackTraces && state.ruleStack!=null ) {
+			e.ruleInvocationStack = getRuleInvocationStack(); // cheap; no stack walk
+		}
 
 		displayRecognitionError(this.getTokenNames(), e);
 	}
@@ -296,6 +323,18 @@ public abstract class BaseRecognizer {
 		return msg;
 	}
 
+	/** Handle syntax errors with strategy rather than the built-in
+	 *  recovery; null restores the default.  The strategy lives in the
+	 *  shared state so delegate grammars use it too.
+	 */
+	public void setErrorStrategy(ErrorStrategy strategy) {
+		state.errorStrategy = strategy;
+	}
+
+	public ErrorStrategy getErrorStrategy() {
+		return state.errorStrategy;
+	}
+
 	/** Get number of recognition errors (lexer, parser, tree parser).  Each
 	 *  recognizer tracks its own number.  So parser and lexer each have
 	 *  separate count.  Does not count the spurious errors found between
@@ -351,6 +390,10 @@ public abstract class BaseRecognizer {
 	 *  token that the match() routine could not recover from.
 	 */
 	public void recover(IntStream input, RecognitionException re) {
+		if ( state.errorStrategy!=null ) {
+			state.errorStrategy.recover(this, input, re);
+			return;
+		}
 		if ( state.lastErrorIndex==input.index() ) {
 			// uh oh, another error at same token index; must be a case
 			// where LT(1) is in the recovery token set so nothing is
@@ -708,23 +751,68 @@ public abstract class BaseRecognizer {
 	 *  in the parser java code a rule is invoked.
 	 *
 	 *  This is very useful for error messages and for context-sensitive
-	 *  error recovery.
+	 *  error recovery.  If the grammar was generated with option
+	 *  ruleStack=true, the rules come straight from state.ruleStack,
+	 *  which includes those of delegate grammars; otherwise we have to
+	 *  walk a stack trace.
 	 */
 	public List getRuleInvocationStack() {
+		if ( state.ruleStack!=null ) {
+			String[] ruleNames = getRuleNames();
+			List rules = new ArrayList(state._rsp+1);
+			for (int i=0; i<=state._rsp; i++) {
+				int ruleIndex = state.ruleStack[i];
+				if ( ruleNames!=null && ruleIndex<ruleNames.length ) {
+					rules.add(ruleNames[ruleIndex]);
+				}
+				else {
+					rules.add(String.valueOf(ruleIndex));
+				}
+			}
+			return rules;
+		}
 		String parserClassName = getClass().getName();
 		return getRuleInvocationStack(new Throwable(), parserClassName);
 	}
 
+	/** Called upon entry to a rule by grammars generated with option
+	 *  ruleStack=true; popRule() on the way out.
+	 */
+	public void pushRule(int ruleIndex) {
+		int[] stack = state.ruleStack;
+		if ( stack==null ) {
+			stack = state.ruleStack = new int[INITIAL_FOLLOW_STACK_SIZE];
+		}
+		else if ( state._rsp+1>=stack.length ) {
+			stack = new int[stack.length*2];
+			System.arraycopy(state.ruleStack, 0, stack, 0, state.ruleStack.length);
+			state.ruleStack = stack;
+		}
+		stack[++state._rsp] = ruleIndex;
+	}
+
+	public void popRule() {
+		state._rsp--;
+	}
+
 	/** A more general version of getRuleInvocationStack where you can
 	 *  pass in, for example, a RecognitionException to get it's rule
 	 *  stack trace.  This routine is shared with all recognizers, hence,
 	 *  static.
 	 *
+	 *  A RecognitionException without a stack trace answers with the
+	 *  ruleInvocationStack recorded when it was reported.
+	 *
 	 *  TODO: move to a utility class or something; weird having lexer call this
 	 */
 	public static List getRuleInvocationStack(Throwable e,
 											  String recognizerClassName)
 	{
+		if ( e instanceof RecognitionException &&
+			 ((RecognitionException)e).ruleInvocationStack!=null )
+		{
+			return ((RecognitionException)e).ruleInvocationStack;
+		}
 		List rules = new ArrayList();
 		StackTraceElement[] stack = e.getStackTrace();
 		int i = 0;
@@ -759,6 +847,13 @@ public abstract class BaseRecognizer {
 		return null;
 	}
 
+	/** Rule names indexed by rule number, for getRuleInvocationStack().
+	 *  Grammars generated with option ruleStack=true override this.
+	 */
+	public String[] getRuleNames() {
+		return null;
+	}
+
 	/** For debugging and other purposes, might want the grammar name.
 	 *  Have ANTLR generate an implementation for this method.
 	 */
@@ -786,20 +881,26 @@ public abstract class BaseRecognizer {
 	 *  start index before, then return where the rule stopped parsing.
 	 *  It returns the index of the last token matched by the rule.
 	 *
-	 *  For now we use a hashtable and just the slow Object-based one.
-	 *  Later, we can make a special one for ints and also one that
-	 *  tosses out data after we commit past input position i.
+	 *  Each rule gets a MemoTable, an int->int map that can be capped
+	 *  with state.ruleMemoMaxSize to toss out data for the earliest
+	 *  input positions.
 	 */
 	public int getRuleMemoization(int ruleIndex, int ruleStartIndex) {
-		if ( state.ruleMemo[ruleIndex]==null ) {
-			state.ruleMemo[ruleIndex] = new HashMap();
+		MemoTable[] tables = ruleMemoTables();
+		if ( tables[ruleIndex]==null ) {
+			tables[ruleIndex] = new MemoTable(state.ruleMemoMaxSize);
 		}
-		Integer stopIndexI =
-			(Integer)state.ruleMemo[ruleIndex].get(new Integer(ruleStartIndex));
-		if ( stopIndexI==null ) {
-			return MEMO_RULE_UNKNOWN;
+		return tables[ruleIndex].get(ruleStartIndex, MEMO_RULE_UNKNOWN);
+	}
+
+	/** state.ruleMemoTables, sized from state.ruleMemo first if this
+	 *  parser was generated before MemoTable and only set that
+	 */
+	protected MemoTable[] ruleMemoTables() {
+		if ( state.ruleMemoTables==null && state.ruleMemo!=null ) {
+			state.ruleMemoTables = new MemoTable[state.ruleMemo.length];
 		}
-		return stopIndexI.intValue();
+		return state.ruleMemoTables;
 	}
 
 	/** Has this rule already parsed input at the current index in the
@@ -828,23 +929,23 @@ public abstract class BaseRecognizer {
 	}
 
 	/** Record whether or not this rule parsed the input at this position
-	 *  successfully.  Use a standard java hashtable for now.
+	 *  successfully.
 	 */
 	public void memoize(IntStream input,
 						int ruleIndex,
 						int ruleStartIndex)
 	{
+		if ( state.abortingSpeculation ) return; // rule was cut short
 		int stopTokenIndex = state.failed?MEMO_RULE_FAILED:input.index()-1;
-		if ( state.ruleMemo==null ) {
+		MemoTable[] tables = ruleMemoTables();
+		if ( tables==null ) {
 			System.err.println("!!!!!!!!! memo array is null for "+ getGrammarFileName());
 		}
-		if ( ruleIndex >= state.ruleMemo.length ) {
-			System.err.println("!!!!!!!!! memo size is "+state.ruleMemo.length+", but rule index is "+ruleIndex);
+		if ( ruleIndex >= tables.length ) {
+			System.err.println("!!!!!!!!! memo size is "+tables.length+", but rule index is "+ruleIndex);
 		}
-		if ( state.ruleMemo[ruleIndex]!=null ) {
-			state.ruleMemo[ruleIndex].put(
-				new Integer(ruleStartIndex), new Integer(stopTokenIndex)
-			);
+		if ( tables[ruleIndex]!=null ) {
+			tables[ruleIndex].put(ruleStartIndex, stopTokenIndex);
 		}
 	}
 
@@ -853,8 +954,8 @@ public abstract class BaseRecognizer {
 	 */
 	public int getRuleMemoizationCacheSize() {
 		int n = 0;
-		for (int i = 0; state.ruleMemo!=null && i < state.ruleMemo.length; i++) {
-			Map ruleMap = state.ruleMemo[i];
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			MemoTable ruleMap = state.ruleMemoTables[i];
 			if ( ruleMap!=null ) {
 				n += ruleMap.size(); // how many input indexes are recorded?
 			}
@@ -862,6 +963,110 @@ public abstract class BaseRecognizer {
 		return n;
 	}
 
+	/** Did syntactic predicate synpredIndex (numbered from 1 within this
+	 *  recognizer) succeed at ruleStartIndex before?  Return 1 if so, 0
+	 *  if it failed, or MEMO_RULE_UNKNOWN if it hasn't been tried there.
+	 */
+	public int getSynpredMemoization(int synpredIndex, int ruleStartIndex) {
+		MemoTable memo = synpredMemoTable(synpredIndex);
+		return memo.get(ruleStartIndex, MEMO_RULE_UNKNOWN);
+	}
+
+	/** Record the outcome of a syntactic predicate at ruleStartIndex */
+	public void memoizeSynpred(int synpredIndex, int ruleStartIndex, boolean success) {
+		MemoTable memo = synpredMemoTable(synpredIndex);
+		memo.put(ruleStartIndex, success ? 1 : 0);
+	}
+
+	/** Throw BacktrackingBudgetExceededException if speculation has gone
+	 *  past any of the limits in state.  Cyclic DFAs call this as they
+	 *  start predicting while backtracking and generated rules as they
+	 *  start while backtracking; index is the current input index.
+	 */
+	public void checkBacktrackingBudget(int decisionNumber, int index) {
+		checkBacktrackingBudget(decisionNumber, index, state.backtracking);
+	}
+
+	/** Generated syntactic predicates call this on behalf of the decision
+	 *  evaluating them before they go a level deeper, passing the depth
+	 *  they are about to enter.  index is where the predicate starts.
+	 *  The symbols consumed by the speculation under way count toward
+	 *  maxSpeculativeTokens along with those of finished predicates.
+	 */
+	public void checkBacktrackingBudget(int decisionNumber, int index, int depth) {
+		if ( state.maxBacktrackingDepth>0 && depth>state.maxBacktrackingDepth ) {
+			budgetExceeded(BacktrackingBudgetExceededException.DEPTH,
+						   decisionNumber, index, depth);
+		}
+		if ( state.maxSpeculativeTokens>0 ) {
+			long n = state.speculativeTokens;
+			if ( state.speculationStart>=0 ) n += index-state.speculationStart;
+			if ( n>state.maxSpeculativeTokens ) {
+				budgetExceeded(BacktrackingBudgetExceededException.SPECULATIVE_TOKENS,
+							   decisionNumber, index, depth);
+			}
+		}
+		if ( state.maxBacktrackingMillis>0 ) {
+			long now = System.currentTimeMillis();
+			if ( state.backtrackingDeadline==0 ) {
+				state.backtrackingDeadline = now + state.maxBacktrackingMillis;
+			}
+			else if ( now>state.backtrackingDeadline ) {
+				budgetExceeded(BacktrackingBudgetExceededException.TIME,
+							   decisionNumber, index, depth);
+			}
+		}
+	}
+
+	protected void budgetExceeded(int limit, int decisionNumber, int index, int depth) {
+		// syntactic predicates clear this once the outermost one has rewound
+		state.abortingSpeculation = state.speculationStart>=0;
+		throw new BacktrackingBudgetExceededException(limit, decisionNumber, index, depth);
+	}
+
+	protected MemoTable synpredMemoTable(int synpredIndex) {
+		if ( synpredMemo==null || synpredMemoGeneration!=state.memoGeneration ) {
+			synpredMemo = new MemoTable[synpredIndex+1];
+			synpredMemoGeneration = state.memoGeneration;
+		}
+		else if ( synpredIndex>=synpredMemo.length ) {
+			MemoTable[] bigger = new MemoTable[synpredIndex+1];
+			System.arraycopy(synpredMemo, 0, bigger, 0, synpredMemo.length);
+			synpredMemo = bigger;
+		}
+		if ( synpredMemo[synpredIndex]==null ) {
+			synpredMemo[synpredIndex] = new MemoTable(state.ruleMemoMaxSize);
+		}
+		return synpredMemo[synpredIndex];
+	}
+
+	/** How many memoization lookups found an entry, over all rules */
+	public int getRuleMemoizationHits() {
+		int n = 0;
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			if ( state.ruleMemoTables[i]!=null ) n += state.ruleMemoTables[i].hits;
+		}
+		return n;
+	}
+
+	/** How many memoization lookups found nothing, over all rules */
+	public int getRuleMemoizationMisses() {
+		int n = 0;
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			if ( state.ruleMemoTables[i]!=null ) n += state.ruleMemoTables[i].misses;
+		}
+		return n;
+	}
+
+	/** How many entries the ruleMemoMaxSize cap has thrown out */
+	public int getRuleMemoizationEvictions() {
+		int n = 0;
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			if ( state.ruleMemoTables[i]!=null ) n += state.ruleMemoTables[i].evictions;
+		}
+		return n;
+	}
+
 	public void traceIn(String ruleName, int ruleIndex, Object inputSymbol)  {
 		System.out.print("enter "+ruleName+" "+inputSymbol);
 		if ( state.backtracking>0 ) {
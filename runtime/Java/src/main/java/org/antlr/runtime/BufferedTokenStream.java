@@ -46,7 +46,7 @@ import java.util.NoSuchElementException;
  *  This is not a subclass of UnbufferedTokenStream because I don't want
  *  to confuse small moving window of tokens it uses for the full buffer.
  */
-public class BufferedTokenStream implements TokenStream {
+public class BufferedTokenStream implements TokenStream, RandomAccessStream {
     protected TokenSource tokenSource;
 
     /** Record every single token pulled from the source so we can reproduce
@@ -192,6 +192,16 @@ public class BufferedTokenStream implements TokenStream {
     
     public List getTokens() { return tokens; }
 
+    /** Store tokens in this list rather than the default ArrayList; e.g.,
+     *  a ColumnarTokenList.  Do this before pulling any tokens.
+     */
+    public void setTokenBuffer(List<Token> tokens) {
+        if ( this.tokens.size()>0 ) {
+            throw new IllegalStateException("can't change token buffer after fetching tokens");
+        }
+        this.tokens = tokens;
+    }
+
     public List getTokens(int start, int stop) {
         return getTokens(start, stop, (BitSet)null);
     }
@@ -0,0 +1,121 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** A read-only window onto a char buffer.  CharStreams hand these out
+ *  from substringView() so token text can be compared, hashed or
+ *  appended without copying it into a new String.
+ *
+ *  hashCode() is the same as String.hashCode() of the same chars, but
+ *  equals() only accepts other views, just as String.equals() only
+ *  accepts Strings; use contentEquals() to compare with any
+ *  CharSequence.  The view is only valid as long as the buffer under it
+ *  doesn't change.
+ */
+public class CharArrayView implements CharSequence {
+	protected char[] data;
+
+	/** Index in data of first char of this view */
+	protected int offset;
+
+	/** How many chars in this view */
+	protected int length;
+
+	public CharArrayView(char[] data, int offset, int length) {
+		if ( offset<0 || length<0 || offset+length>data.length ) {
+			throw new IndexOutOfBoundsException("view "+offset+".."+(offset+length-1)+
+												" outside buffer of size "+data.length);
+		}
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/** A view of chars start..stop of input if it can hand out views,
+	 *  else a copy from substring().
+	 */
+	public static CharSequence substringView(CharStream input, int start, int stop) {
+		if ( input instanceof CharViewStream ) {
+			return ((CharViewStream)input).substringView(start, stop);
+		}
+		return input.substring(start, stop);
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int index) {
+		if ( index<0 || index>=length ) {
+			throw new IndexOutOfBoundsException("index "+index+" not in 0.."+(length-1));
+		}
+		return data[offset+index];
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		if ( start<0 || end>length || start>end ) {
+			throw new IndexOutOfBoundsException("subSequence "+start+".."+end+" of "+length);
+		}
+		return new CharArrayView(data, offset+start, end-start);
+	}
+
+	/** Does this view hold the same chars as s? */
+	public boolean contentEquals(CharSequence s) {
+		if ( s==null || s.length()!=length() ) {
+			return false;
+		}
+		for (int i=0; i<length(); i++) {
+			if ( charAt(i)!=s.charAt(i) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean equals(Object o) {
+		if ( this==o ) {
+			return true;
+		}
+		if ( !(o instanceof CharArrayView) ) {
+			return false;
+		}
+		return contentEquals((CharSequence)o);
+	}
+
+	public int hashCode() {
+		int h = 0;
+		for (int i=0; i<length(); i++) {
+			h = 31*h + charAt(i);
+		}
+		return h;
+	}
+
+	public String toString() {
+		return new String(data, offset, length);
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A token buffer that stores each token's fields in parallel int
+ *  columns rather than as one object per token.  Columns grow a chunk
+ *  at a time so appending never copies the existing tokens.  get(i)
+ *  hands out a TokenView, a small flyweight that reads and writes
+ *  through to the columns.
+ *
+ *  Each token costs seven ints here versus a whole CommonToken.  Text
+ *  is computed from the input stream like CommonToken does; only text
+ *  set explicitly (by a lexer action or setText()) is kept, in a side
+ *  table.  Only the Token interface fields survive so don't use this
+ *  with lexers that emit custom Token subclasses carrying extra data.
+ *
+ *  Views of the same index are equals() but not necessarily the same
+ *  object, although recently used views are recycled to save garbage.
+ *
+ *  Use it as the buffer of any BufferedTokenStream, including a
+ *  TokenRewriteStream, via setTokenBuffer(); see ColumnarTokenStream.
+ */
+public class ColumnarTokenList extends AbstractList<Token> {
+	public static final int CHUNK_SHIFT = 12;
+	public static final int CHUNK_SIZE = 1<<CHUNK_SHIFT;
+	protected static final int CHUNK_MASK = CHUNK_SIZE-1;
+
+	/** How many recently handed out views we keep for reuse */
+	protected static final int VIEW_CACHE_SIZE = 64;
+
+	protected static final int TYPE = 0;
+	protected static final int CHANNEL = 1;
+	protected static final int START = 2;
+	protected static final int STOP = 3;
+	protected static final int LINE = 4;
+	protected static final int POS = 5;
+	protected static final int INPUT = 6;
+	protected static final int NUM_COLUMNS = 7;
+
+	/** columns[c][chunk][i & CHUNK_MASK] */
+	protected int[][][] columns = new int[NUM_COLUMNS][][];
+
+	protected int n = 0;
+
+	/** The distinct char streams tokens came from; INPUT column indexes
+	 *  this.  Usually there's just one.
+	 */
+	protected List<CharStream> inputs = new ArrayList<CharStream>(1);
+
+	/** Explicitly set text by token index */
+	protected Map<Integer, String> texts = new HashMap<Integer, String>();
+
+	protected TokenView[] views = new TokenView[VIEW_CACHE_SIZE];
+
+	public ColumnarTokenList() {
+		for (int c=0; c<NUM_COLUMNS; c++) {
+			columns[c] = new int[4][];
+		}
+	}
+
+	/** A token living at index in the columns of a ColumnarTokenList */
+	public class TokenView implements TextViewToken {
+		protected final int index;
+
+		public TokenView(int index) {
+			this.index = index;
+		}
+
+		public ColumnarTokenList getTokenList() {
+			return ColumnarTokenList.this;
+		}
+
+		public String getText() {
+			String text = texts.get(index);
+			if ( text!=null ) {
+				return text;
+			}
+			CharStream input = getInputStream();
+			if ( input==null ) {
+				return null;
+			}
+			int start = getStartIndex();
+			int stop = getStopIndex();
+			int n = input.size();
+			if ( start<n && stop<n) {
+				return input.substring(start,stop);
+			}
+			return "<EOF>";
+		}
+
+		public CharSequence getTextView() {
+			String text = texts.get(index);
+			if ( text!=null ) {
+				return text;
+			}
+			CharStream input = getInputStream();
+			if ( input==null ) {
+				return null;
+			}
+			int start = getStartIndex();
+			int stop = getStopIndex();
+			int n = input.size();
+			if ( start<n && stop<n) {
+				return CharArrayView.substringView(input, start, stop);
+			}
+			return "<EOF>";
+		}
+
+		public void setText(String text) {
+			if ( text==null ) {
+				texts.remove(index);
+			}
+			else {
+				texts.put(index, text);
+			}
+		}
+
+		public int getType() { return column(TYPE, index); }
+		public void setType(int ttype) { setColumn(TYPE, index, ttype); }
+
+		public int getLine() {
+			int line = column(LINE, index);
+			CharStream input = getInputStream();
+			if ( line<0 && input instanceof LineIndexedCharStream ) {
+				return ((LineIndexedCharStream)input).getLine(getStartIndex());
+			}
+			return line;
+		}
+
+		public void setLine(int line) { setColumn(LINE, index, line); }
+
+		public int getCharPositionInLine() {
+			CharStream input = getInputStream();
+			if ( column(LINE, index)<0 && input instanceof LineIndexedCharStream ) {
+				return ((LineIndexedCharStream)input).getCharPositionInLine(getStartIndex());
+			}
+			return column(POS, index);
+		}
+
+		public void setCharPositionInLine(int pos) { setColumn(POS, index, pos); }
+
+		public int getChannel() { return column(CHANNEL, index); }
+		public void setChannel(int channel) { setColumn(CHANNEL, index, channel); }
+
+		public int getStartIndex() { return column(START, index); }
+		public void setStartIndex(int start) { setColumn(START, index, start); }
+
+		public int getStopIndex() { return column(STOP, index); }
+		public void setStopIndex(int stop) { setColumn(STOP, index, stop); }
+
+		public int getTokenIndex() { return index; }
+
+		/** A view's index is its position in the list; can't change it */
+		public void setTokenIndex(int index) {
+			if ( index!=this.index ) {
+				throw new UnsupportedOperationException("can't move token "+this.index+" to index "+index);
+			}
+		}
+
+		public CharStream getInputStream() {
+			int i = column(INPUT, index);
+			return i<0 ? null : inputs.get(i);
+		}
+
+		public void setInputStream(CharStream input) {
+			setColumn(INPUT, index, inputIndex(input));
+		}
+
+		public boolean equals(Object o) {
+			if ( !(o instanceof TokenView) ) {
+				return false;
+			}
+			TokenView other = (TokenView)o;
+			return other.index==index && other.getTokenList()==getTokenList();
+		}
+
+		public int hashCode() {
+			return index;
+		}
+
+		public String toString() {
+			String channelStr = "";
+			if ( getChannel()>0 ) {
+				channelStr=",channel="+getChannel();
+			}
+			String txt = getText();
+			if ( txt!=null ) {
+				txt = txt.replaceAll("\n","\\\\n");
+				txt = txt.replaceAll("\r","\\\\r");
+				txt = txt.replaceAll("\t","\\\\t");
+			}
+			else {
+				txt = "<no text>";
+			}
+			return "[@"+getTokenIndex()+","+getStartIndex()+":"+getStopIndex()+"='"+txt+"',<"+getType()+">"+channelStr+","+getLine()+":"+getCharPositionInLine()+"]";
+		}
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public Token get(int i) {
+		if ( i<0 || i>=n ) {
+			throw new IndexOutOfBoundsException("token index "+i+" out of range 0.."+(n-1));
+		}
+		int slot = i & (VIEW_CACHE_SIZE-1);
+		TokenView v = views[slot];
+		if ( v==null || v.index!=i ) {
+			v = new TokenView(i);
+			views[slot] = v;
+		}
+		return v;
+	}
+
+	/** Copy t's fields into the columns as a new last token */
+	public boolean add(Token t) {
+		int i = n;
+		int chunk = i >> CHUNK_SHIFT;
+		if ( (i & CHUNK_MASK)==0 ) {
+			for (int c=0; c<NUM_COLUMNS; c++) {
+				if ( chunk>=columns[c].length ) {
+					int[][] bigger = new int[columns[c].length*2][];
+					System.arraycopy(columns[c], 0, bigger, 0, columns[c].length);
+					columns[c] = bigger;
+				}
+				if ( columns[c][chunk]==null ) {
+					columns[c][chunk] = new int[CHUNK_SIZE];
+				}
+			}
+		}
+		n++;
+		int line;
+		int pos;
+		if ( t instanceof CommonToken ) {
+			CommonToken ct = (CommonToken)t;
+			setColumn(START, i, ct.getStartIndex());
+			setColumn(STOP, i, ct.getStopIndex());
+			line = ct.line; // keep -1 so line info stays lazy
+			pos = ct.charPositionInLine;
+			if ( ct.text!=null ) {
+				texts.put(i, ct.text);
+			}
+		}
+		else {
+			line = t.getLine();
+			pos = t.getCharPositionInLine();
+			setColumn(START, i, -1);
+			setColumn(STOP, i, -1);
+			String text = t.getText();
+			if ( text!=null ) {
+				texts.put(i, text);
+			}
+		}
+		setColumn(TYPE, i, t.getType());
+		setColumn(CHANNEL, i, t.getChannel());
+		setColumn(LINE, i, line);
+		setColumn(POS, i, pos);
+		setColumn(INPUT, i, inputIndex(t.getInputStream()));
+		modCount++;
+		return true;
+	}
+
+	public void clear() {
+		n = 0;
+		inputs.clear();
+		texts.clear();
+		for (int i=0; i<views.length; i++) {
+			views[i] = null;
+		}
+		modCount++;
+	}
+
+	public int getType(int i) { return column(TYPE, i); }
+
+	public int getChannel(int i) { return column(CHANNEL, i); }
+
+	protected int column(int c, int i) {
+		return columns[c][i >> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	protected void setColumn(int c, int i, int v) {
+		columns[c][i >> CHUNK_SHIFT][i & CHUNK_MASK] = v;
+	}
+
+	protected int inputIndex(CharStream input) {
+		if ( input==null ) {
+			return -1;
+		}
+		// nearly always the same stream as last time
+		for (int i=inputs.size()-1; i>=0; i--) {
+			if ( inputs.get(i)==input ) {
+				return i;
+			}
+		}
+		inputs.add(input);
+		return inputs.size()-1;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** A CommonTokenStream that keeps its tokens in a ColumnarTokenList,
+ *  which costs far less memory than a list of CommonToken objects for
+ *  very large inputs.  Tokens come back as flyweight views so treat
+ *  them as you would any Token but compare them with equals() rather
+ *  than ==.
+ *
+ *  To get the same buffer in a TokenRewriteStream, do:
+ *
+ *     TokenRewriteStream tokens = new TokenRewriteStream(lexer);
+ *     tokens.setTokenBuffer(new ColumnarTokenList());
+ */
+public class ColumnarTokenStream extends CommonTokenStream {
+	public ColumnarTokenStream() {
+		setTokenBuffer(new ColumnarTokenList());
+	}
+
+	public ColumnarTokenStream(TokenSource tokenSource) {
+		super(tokenSource);
+		setTokenBuffer(new ColumnarTokenList());
+	}
+
+	public ColumnarTokenStream(TokenSource tokenSource, int channel) {
+		super(tokenSource, channel);
+		setTokenBuffer(new ColumnarTokenList());
+	}
+
+	public ColumnarTokenList getTokenList() {
+		return (ColumnarTokenList)tokens;
+	}
+}
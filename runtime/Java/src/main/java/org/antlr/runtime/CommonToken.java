@@ -29,13 +29,16 @@ package org.antlr.runtime;
 
 import java.io.Serializable;
 
-public class CommonToken implements Token, Serializable {
+public class CommonToken implements TextViewToken, Serializable {
 	protected int type;
 	protected int line;
 	protected int charPositionInLine = -1; // set to invalid position
 	protected int channel=DEFAULT_CHANNEL;
 	protected transient CharStream input;
 
+	/** If non-null, getText() shares Strings through this cache */
+	protected transient TokenTextCache textCache;
+
 	/** We need to be able to change the text once in a while.  If
 	 *  this is non-null, then getText should return this.  Note that
 	 *  start/stop are not affected by changing this.
@@ -100,6 +103,9 @@ public class CommonToken implements Token, Serializable {
 		}
 		int n = input.size();
 		if ( start<n && stop<n) {
+			if ( textCache!=null ) {
+				return textCache.getText(type, input, start, stop);
+			}
 			return input.substring(start,stop);
 		}
 		else {
@@ -107,6 +113,29 @@ public class CommonToken implements Token, Serializable {
 		}
 	}
 
+	/** Same as getText() but asks the input for a view of the chars
+	 *  rather than a copy.
+	 */
+	public CharSequence getTextView() {
+		if ( text!=null ) {
+			return text;
+		}
+		if ( input==null ) {
+			return null;
+		}
+		int n = input.size();
+		if ( start<n && stop<n) {
+			return CharArrayView.substringView(input, start, stop);
+		}
+		else {
+			return "<EOF>";
+		}
+	}
+
+	public void setTextCache(TokenTextCache textCache) {
+		this.textCache = textCache;
+	}
+
 	/** Override the text for this token.  getText() will return this text
 	 *  rather than pulling from the buffer.  Note that this does not mean
 	 *  that start/stop indexes are not valid.  It means that that input
@@ -116,11 +145,20 @@ public class CommonToken implements Token, Serializable {
 		this.text = text;
 	}
 
+	/** A line of -1 means the lexer recorded only char indexes; ask a
+	 *  line-indexed input where start falls.
+	 */
 	public int getLine() {
+		if ( line<0 && input instanceof LineIndexedCharStream ) {
+			return ((LineIndexedCharStream)input).getLine(start);
+		}
 		return line;
 	}
 
 	public int getCharPositionInLine() {
+		if ( line<0 && input instanceof LineIndexedCharStream ) {
+			return ((LineIndexedCharStream)input).getCharPositionInLine(start);
+		}
 		return charPositionInLine;
 	}
 
@@ -186,6 +224,6 @@ public class CommonToken implements Token, Serializable {
 		else {
 			txt = "<no text>";
 		}
-		return "[@"+getTokenIndex()+","+start+":"+stop+"='"+txt+"',<"+type+">"+channelStr+","+line+":"+getCharPositionInLine()+"]";
+		return "[@"+getTokenIndex()+","+start+":"+stop+"='"+txt+"',<"+type+">"+channelStr+","+getLine()+":"+getCharPositionInLine()+"]";
 	}
 }
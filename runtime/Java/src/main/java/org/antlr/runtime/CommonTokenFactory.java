@@ -0,0 +1,91 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** The default TokenFactory; it creates CommonToken objects.
+ *
+ *  CommonToken normally computes its text from the char stream upon
+ *  request.  That doesn't work if the stream throws away chars, as
+ *  UnbufferedCharStream does, so this factory can copy the text into the
+ *  token as it's created.  Give it a TokenTextCache to share a single
+ *  String among tokens with the same type and text.
+ */
+public class CommonTokenFactory implements TokenFactory {
+	public static final CommonTokenFactory DEFAULT = new CommonTokenFactory();
+
+	/** Copy text out of the char stream into each new token? */
+	protected boolean copyText;
+
+	/** If non-null, token text is shared through this cache, whether
+	 *  copied at creation or computed later by CommonToken.getText().
+	 */
+	protected TokenTextCache textCache;
+
+	public CommonTokenFactory() {
+		this(false);
+	}
+
+	public CommonTokenFactory(boolean copyText) {
+		this(copyText, null);
+	}
+
+	public CommonTokenFactory(boolean copyText, TokenTextCache textCache) {
+		this.copyText = copyText;
+		this.textCache = textCache;
+	}
+
+	public TokenTextCache getTextCache() {
+		return textCache;
+	}
+
+	public Token create(CharStream input, int ttype, String text,
+						int channel, int start, int stop,
+						int line, int charPositionInLine)
+	{
+		CommonToken t = new CommonToken(input, ttype, channel, start, stop);
+		t.setLine(line);
+		t.setCharPositionInLine(charPositionInLine);
+		if ( text!=null ) {
+			t.setText(text);
+		}
+		else if ( ttype!=Token.EOF && input!=null ) {
+			if ( copyText ) {
+				if ( textCache!=null ) {
+					t.setText(textCache.getText(ttype, input, start, stop));
+				}
+				else {
+					t.setText(input.substring(start, stop));
+				}
+			}
+			else {
+				t.setTextCache(textCache);
+			}
+		}
+		return t;
+	}
+}
@@ -49,6 +49,26 @@ public class CommonTokenStream extends BufferedTokenStream {
     /** Skip tokens on any channel but this one; this is how we skip whitespace... */
     protected int channel = Token.DEFAULT_CHANNEL;
 
+    /** Indexes of the on-channel tokens fetched so far, in order, plus
+     *  EOF.  LT(k) and LB(k) index straight into this rather than
+     *  walking over the off-channel tokens in between.  Each token read
+     *  through the index has its channel checked, so a token moved off
+     *  our channel by setChannel() is dropped when we get to it.  A token
+     *  moved onto our channel can't be noticed that way; call reindex().
+     */
+    protected int[] onChannel = new int[100];
+
+    /** How many entries of onChannel are valid */
+    protected int numOnChannel = 0;
+
+    /** tokens 0..indexed-1 have been checked for onChannel */
+    protected int indexed = 0;
+
+    /** Slot of p in onChannel if onChannel[pSlot]==p; a hint, since
+     *  seek() can move p anywhere.
+     */
+    protected int pSlot = 0;
+
     public CommonTokenStream() { ; }
 
     public CommonTokenStream(TokenSource tokenSource) {
@@ -63,27 +83,29 @@ public class CommonTokenStream extends BufferedTokenStream {
     /** Always leave p on an on-channel token. */
     public void consume() {
         if ( p == -1 ) setup();
-        p++;
-        sync(p);
-        while ( tokens.get(p).getChannel()!=channel ) {
+        int slot = slotAfter(p);
+        syncSlot(slot);
+        if ( slot>=numOnChannel ) { // at EOF; same as walking off the end
             p++;
             sync(p);
+            return;
+        }
+        if ( reindexIfStale(slot) ) {
+            consume();
+            return;
         }
+        p = onChannel[slot];
+        pSlot = slot;
     }
 
     protected Token LB(int k) {
         if ( k==0 || (p-k)<0 ) return null;
-
-        int i = p;
-        int n = 1;
-        // find k good tokens looking backwards
-        while ( n<=k ) {
-            // skip off-channel tokens
-            i = skipOffTokenChannelsReverse(i-1);
-            n++;
-        }
-        if ( i<0 ) return null;
-        return tokens.get(i);
+        // count on-channel tokens before p
+        int before = pSlot<numOnChannel && onChannel[pSlot]==p ? pSlot : slotAfter(p-1);
+        int slot = before - k;
+        if ( slot<0 ) return null;
+        if ( reindexIfStale(slot) ) return LB(k);
+        return tokens.get(onChannel[slot]);
     }
 
     public Token LT(int k) {
@@ -91,13 +113,16 @@ public class CommonTokenStream extends BufferedTokenStream {
         if ( p == -1 ) setup();
         if ( k == 0 ) return null;
         if ( k < 0 ) return LB(-k);
+        if ( pSlot<numOnChannel && onChannel[pSlot]==p && !isOnChannel(tokens.get(p)) ) {
+            reindex(p); // moves p to the next on-channel token
+        }
         int i = p;
-        int n = 1; // we know tokens[p] is a good one
-        // find k good tokens
-        while ( n<k ) {
-            // skip off-channel tokens
-            i = skipOffTokenChannels(i+1);
-            n++;
+        if ( k>1 ) {
+            int slot = slotAfter(p) + k - 2;
+            syncSlot(slot);
+            if ( slot>=numOnChannel ) slot = numOnChannel-1; // EOF
+            if ( reindexIfStale(slot) ) return LT(k);
+            i = onChannel[slot];
         }
 		if ( i>range ) range = i;
         return tokens.get(i);
@@ -122,6 +147,96 @@ public class CommonTokenStream extends BufferedTokenStream {
         return i;
     }
 
+    /** Record on-channel tokens up through index i (or EOF).  We sync()
+     *  each token before looking at its channel, as skipOffTokenChannels()
+     *  does, so subclasses can still adjust tokens in sync().
+     */
+    protected void indexThrough(int i) {
+        while ( indexed<=i ) {
+            int n = tokens.size();
+            if ( indexed==n && n>0 && tokens.get(n-1).getType()==Token.EOF ) return;
+            sync(indexed);
+            if ( indexed>=tokens.size() ) return;
+            if ( isOnChannel(tokens.get(indexed)) ) {
+                if ( numOnChannel==onChannel.length ) {
+                    int[] bigger = new int[onChannel.length*2];
+                    System.arraycopy(onChannel, 0, bigger, 0, numOnChannel);
+                    onChannel = bigger;
+                }
+                onChannel[numOnChannel++] = indexed;
+            }
+            indexed++;
+        }
+    }
+
+    /** Return the slot in onChannel of the first on-channel token after
+     *  index i, which might not be fetched yet (slot>=numOnChannel).
+     */
+    protected int slotAfter(int i) {
+        if ( pSlot<numOnChannel && onChannel[pSlot]==i ) {
+            return pSlot+1; // the usual case: i is p
+        }
+        if ( i>=indexed ) indexThrough(i);
+        int lo = 0;
+        int hi = numOnChannel; // search onChannel[0..numOnChannel) for first >i
+        while ( lo<hi ) {
+            int mid = (lo+hi)>>>1;
+            if ( onChannel[mid]<=i ) lo = mid+1;
+            else hi = mid;
+        }
+        if ( i==p && lo>0 && onChannel[lo-1]==p ) pSlot = lo-1;
+        return lo;
+    }
+
+    /** Index tokens until onChannel[slot] exists or we hit EOF */
+    protected void syncSlot(int slot) {
+        while ( slot>=numOnChannel ) {
+            int before = indexed;
+            indexThrough(indexed + slot-numOnChannel);
+            if ( indexed==before ) return; // at EOF
+        }
+    }
+
+    protected boolean isOnChannel(Token t) {
+        return t.getChannel()==channel || t.getType()==Token.EOF;
+    }
+
+    /** If the token in onChannel[slot] has left our channel since it was
+     *  indexed, reindex from there and return true so the caller can
+     *  look again.
+     */
+    protected boolean reindexIfStale(int slot) {
+        int i = onChannel[slot];
+        if ( isOnChannel(tokens.get(i)) ) return false;
+        reindex(i);
+        return true;
+    }
+
+    /** Forget what we know about the channels of tokens from index on,
+     *  e.g., after moving one of them onto our channel with setChannel().
+     *  They are indexed again as LT() gets to them.  If LT(1) is no
+     *  longer on our channel, move on to the next token that is.
+     */
+    public void reindex(int index) {
+        if ( index<0 ) index = 0;
+        if ( index>=indexed ) return;
+        int lo = 0;
+        int hi = numOnChannel; // drop slots of tokens >= index
+        while ( lo<hi ) {
+            int mid = (lo+hi)>>>1;
+            if ( onChannel[mid]<index ) lo = mid+1;
+            else hi = mid;
+        }
+        numOnChannel = lo;
+        indexed = index;
+        pSlot = 0;
+        if ( p<index || p>=tokens.size() ) return;
+        while ( tokens.get(p).getChannel()!=channel && tokens.get(p).getType()!=Token.EOF ) {
+            p++;
+            sync(p);
+        }
+    }
+
 	public void reset() {
 		super.reset();
 		p = skipOffTokenChannels(0);
@@ -131,7 +246,7 @@ public class CommonTokenStream extends BufferedTokenStream {
         p = 0;
         sync(0);
         int i = 0;
-        while ( tokens.get(i).getChannel()!=channel ) {
+        while ( tokens.get(i).getChannel()!=channel && tokens.get(i).getType()!=Token.EOF ) {
             i++;
             sync(i);
         }
@@ -140,13 +255,11 @@ public class CommonTokenStream extends BufferedTokenStream {
 
 	/** Count EOF just once. */
 	public int getNumberOfOnChannelTokens() {
-		int n = 0;
 		fill();
-		for (int i = 0; i < tokens.size(); i++) {
-			Token t = tokens.get(i);
-			if ( t.getChannel()==channel ) n++;
-			if ( t.getType()==Token.EOF ) break;
-		}
+		indexThrough(tokens.size()-1);
+		int n = numOnChannel;
+		Token eof = tokens.get(onChannel[numOnChannel-1]);
+		if ( eof.getType()==Token.EOF && eof.getChannel()!=channel ) n--;
 		return n;
 	}
 
@@ -154,5 +267,8 @@ public class CommonTokenStream extends BufferedTokenStream {
     public void setTokenSource(TokenSource tokenSource) {
         super.setTokenSource(tokenSource);
         channel = Token.DEFAULT_CHANNEL;
+        numOnChannel = 0;
+        indexed = 0;
+        pSlot = 0;
     }
 }
@@ -47,6 +47,20 @@ public class DFA {
     protected short[] special;
     protected short[][] transition;
 
+	/** Alternatively, the transition table as a comb vector: the edge
+	 *  from s on c goes to next[i] where i=base[s]+c-min[s] if check[i]
+	 *  is s.  Set these and leave transition null.
+	 */
+	protected char[] base;
+	protected short[] next;
+	protected short[] check;
+
+	/** If non-null, min, max and the transitions are indexed by
+	 *  charClass[c] rather than by char c; lexer DFAs share one map.
+	 *  EOF/EOT handling still looks at the char itself.
+	 */
+	protected char[] charClass;
+
 	protected int decisionNumber;
 
 	/** Which recognizer encloses this DFA?  Needed to check backtracking */
@@ -58,6 +72,9 @@ public class DFA {
 	 *  using this DFA (representing the covering regular approximation
 	 *  to the underlying CFL).  Return an alternative number 1..n.  Throw
 	 *  an exception upon error.
+	 *
+	 *  On a RandomAccessStream we walk the lookahead with LA(k) and never
+	 *  move the input; otherwise we consume symbols and rewind after.
 	 */
 	public int predict(IntStream input)
 		throws RecognitionException
@@ -65,8 +82,17 @@ public class DFA {
 		if ( debug ) {
 			System.err.println("Enter DFA.predict for decision "+decisionNumber);
 		}
+		if ( accept==null ) loadTables();
+		if ( recognizer.state.backtracking>0 ) {
+			recognizer.checkBacktrackingBudget(decisionNumber, input.index());
+		}
+		if ( input instanceof RandomAccessStream ) {
+			return predictByOffset(input);
+		}
+		int start = input.index();
 		int mark = input.mark(); // remember where decision started in input
 		int s = 0; // we always start at s0
+		int k = 1; // how far we are from start, in LA(k) terms
 		try {
 			while ( true ) {
 				if ( debug ) System.err.println("DFA "+decisionNumber+" state "+s+" LA(1)="+(char)input.LA(1)+"("+input.LA(1)+
@@ -77,16 +103,23 @@ public class DFA {
 						System.err.println("DFA "+decisionNumber+
 							" state "+s+" is special state "+specialState);
 					}
-					s = specialStateTransition(specialState,input);
+					// special states look at LA(k) from where the decision
+					// started; that's also where predicates must be evaluated
+					int index = input.index();
+					input.seek(start);
+					int snext = specialStateTransition(specialState,input,k);
+					input.seek(index);
 					if ( debug ) {
 						System.err.println("DFA "+decisionNumber+
-							" returns from special state "+specialState+" to "+s);
+							" returns from special state "+specialState+" to "+snext);
 					}
-					if ( s==-1 ) {
+					if ( snext==-1 ) {
 						noViableAlt(s,input);
 						return 0;
 					}
+					s = snext;
 					input.consume();
+					k++;
 					continue;
 				}
 				if ( accept[s] >= 1 ) {
@@ -94,9 +127,10 @@ public class DFA {
 					return accept[s];
 				}
 				// look for a normal char transition
-				char c = (char)input.LA(1); // -1 == \uFFFF, all tokens fit in 65000 space
+				char la = (char)input.LA(1); // -1 == \uFFFF, all tokens fit in 65000 space
+				char c = charClass!=null ? charClass[la] : la;
 				if (c>=min[s] && c<=max[s]) {
-					int snext = transition[s][c-min[s]]; // move to next state
+					int snext = edge(s, c); // move to next state
 					if ( snext < 0 ) {
 						// was in range but not a normal transition
 						// must check EOT, which is like the else clause.
@@ -106,6 +140,7 @@ public class DFA {
 							if ( debug ) System.err.println("EOT transition");
 							s = eot[s];
 							input.consume();
+							k++;
 							// TODO: I had this as return accept[eot[s]]
 							// which assumed here that the EOT edge always
 							// went to an accept...faster to do this, but
@@ -118,15 +153,17 @@ public class DFA {
 					}
 					s = snext;
 					input.consume();
+					k++;
 					continue;
 				}
 				if ( eot[s]>=0 ) {  // EOT Transition?
 					if ( debug ) System.err.println("EOT transition");
 					s = eot[s];
 					input.consume();
+					k++;
 					continue;
 				}
-				if ( c==(char)Token.EOF && eof[s]>=0 ) {  // EOF Transition to accept state?
+				if ( la==(char)Token.EOF && eof[s]>=0 ) {  // EOF Transition to accept state?
 					if ( debug ) System.err.println("accept via EOF; predict "+accept[eof[s]]+" from "+eof[s]);
 					return accept[eof[s]];
 				}
@@ -136,8 +173,8 @@ public class DFA {
 					System.err.println("max["+s+"]="+max[s]);
 					System.err.println("eot["+s+"]="+eot[s]);
 					System.err.println("eof["+s+"]="+eof[s]);
-					for (int p=0; p<transition[s].length; p++) {
-						System.err.print(transition[s][p]+" ");
+					for (int p=min[s]; p<=max[s]; p++) {
+						System.err.print(edge(s,(char)p)+" ");
 					}
 					System.err.println();
 				}
@@ -150,6 +187,108 @@ public class DFA {
 		}
 	}
 
+	/** Same simulation as predict() but LA(k) moves through the input
+	 *  rather than consume(), so there's no mark/rewind and the input
+	 *  never moves unless we must report an error.
+	 */
+	protected int predictByOffset(IntStream input)
+		throws RecognitionException
+	{
+		int s = 0; // we always start at s0
+		int k = 1; // LA(k) is the next symbol to test
+		while ( true ) {
+			int specialState = special[s];
+			if ( specialState>=0 ) {
+				int snext = specialStateTransition(specialState,input,k);
+				if ( snext==-1 ) return noViableAlt(s,input,k);
+				s = snext;
+				k++;
+				continue;
+			}
+			if ( accept[s] >= 1 ) return accept[s];
+			char la = (char)input.LA(k); // -1 == \uFFFF, all tokens fit in 65000 space
+			char c = charClass!=null ? charClass[la] : la;
+			if ( c>=min[s] && c<=max[s] ) {
+				int snext = edge(s, c); // move to next state
+				if ( snext >= 0 ) {
+					s = snext;
+					k++;
+					continue;
+				}
+				if ( eot[s]>=0 ) { // in range but only EOT edge applies
+					s = eot[s];
+					k++;
+					continue;
+				}
+				return noViableAlt(s,input,k);
+			}
+			if ( eot[s]>=0 ) {  // EOT Transition?
+				s = eot[s];
+				k++;
+				continue;
+			}
+			if ( la==(char)Token.EOF && eof[s]>=0 ) {  // EOF Transition to accept state?
+				return accept[eof[s]];
+			}
+			return noViableAlt(s,input,k);
+		}
+	}
+
+	/** Report no viable alt at LA(k).  The exception records where the
+	 *  input is, so move up to the offending symbol first just as
+	 *  predict() would have and put the input back after.  Returns 0 if
+	 *  backtracking.
+	 */
+	protected int noViableAlt(int s, IntStream input, int k)
+		throws NoViableAltException
+	{
+		if ( k==1 || recognizer.state.backtracking>0 ) {
+			noViableAlt(s,input);
+			return 0;
+		}
+		int mark = input.mark();
+		try {
+			for (int i=1; i<k; i++) input.consume();
+			noViableAlt(s,input);
+		}
+		finally {
+			input.rewind(mark);
+		}
+		return 0;
+	}
+
+	/** Set the tables of a DFA that unpacks them on its first predict();
+	 *  DFAs that set their tables in the constructor never get here.
+	 */
+	protected void loadTables() {
+		throw new IllegalStateException("DFA "+decisionNumber+" has no tables");
+	}
+
+	/** Use tables unpacked elsewhere, typically shared by all instances
+	 *  of a DFA; see loadTables().
+	 */
+	protected void setTables(DFATables t) {
+		eot = t.eot;
+		eof = t.eof;
+		min = t.min;
+		max = t.max;
+		special = t.special;
+		transition = t.transition;
+		base = t.base;
+		next = t.next;
+		check = t.check;
+		accept = t.accept; // last; predict() tests it to see if we're loaded
+	}
+
+	/** Target of s on c (a char class if charClass is set), which is
+	 *  within min[s]..max[s]; -1 if none
+	 */
+	protected int edge(int s, char c) {
+		if ( transition!=null ) return transition[s][c-min[s]];
+		int i = base[s]+c-min[s];
+		return check[i]==s ? next[i] : -1;
+	}
+
 	protected void noViableAlt(int s, IntStream input) throws NoViableAltException {
 		if (recognizer.state.backtracking>0) {
 			recognizer.state.failed=true;
@@ -167,6 +306,29 @@ public class DFA {
 	/** A hook for debugging interface */
 	protected void error(NoViableAltException nvae) { ; }
 
+	/** Compute the target of special state s (one with predicated
+	 *  edges) from lookahead symbol LA(k).  The input is positioned at
+	 *  the start of the decision so predicates see the right input.
+	 *  Return -1 if no edge applies.
+	 *
+	 *  DFAs generated by earlier versions override the two-arg version
+	 *  instead, which expects the input to sit at the symbol to test
+	 *  with a marker at the start of the decision; oblige them.
+	 */
+	public int specialStateTransition(int s, IntStream input, int k)
+		throws NoViableAltException
+	{
+		int mark = input.mark();
+		try {
+			for (int i=1; i<k; i++) input.consume();
+			return specialStateTransition(s, input);
+		}
+		finally {
+			input.rewind(mark);
+		}
+	}
+
+	/** The old protocol; see specialStateTransition(int, IntStream, int) */
 	public int specialStateTransition(int s, IntStream input)
 		throws NoViableAltException
 	{
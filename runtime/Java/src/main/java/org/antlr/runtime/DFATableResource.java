@@ -0,0 +1,183 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The DFA tables of a recognizer generated with option dfaTables=resource.
+ *  Rather than string literals in the class, the tool writes the
+ *  run-length encoded tables of all its DFAs to one binary resource next
+ *  to the generated source, or in the same package directory under the
+ *  tool's -ro dir.  The resource must end up on the classpath in the
+ *  recognizer's package; the build has to copy it there as source trees
+ *  are usually only compiled.  We read the resource on the first
+ *  predict() of any of its DFAs and unpack each DFA's tables on its own
+ *  first predict().
+ *
+ *  Layout, all big-endian as DataOutputStream writes it: MAGIC, VERSION,
+ *  the grammar checksum (long) and number of DFAs the recognizer was
+ *  generated with, the char class map (length-prefixed chars, length 0 if the lexer has
+ *  none), the number of DFAs, then per DFA its decision number, a
+ *  boolean that is true if its transitions are a comb vector, and the
+ *  encoded eot, eof, min, max, accept and special tables followed by
+ *  either base, next and check or a row count and that many transition
+ *  rows.
+ */
+public class DFATableResource {
+	public static final int MAGIC = 0x44464154; // "DFAT"
+	public static final int VERSION = 2;
+
+	/** The tables are found relative to this class */
+	protected Class<?> owner;
+	protected String name;
+
+	/** What the generated recognizer expects the header to say */
+	protected long grammarChecksum;
+	protected int numberOfDecisions;
+
+	/** Decision number -> its encoded tables; null until loaded */
+	protected Map<Integer, String[]> encoded;
+
+	/** Decision number -> its encoded transition rows; absent if comb */
+	protected Map<Integer, String[]> encodedRows;
+
+	/** Decision number -> unpacked tables */
+	protected Map<Integer, DFATables> tables = new HashMap<Integer, DFATables>();
+
+	protected char[] charClass;
+
+	public DFATableResource(Class<?> owner, String name,
+							long grammarChecksum, int numberOfDecisions)
+	{
+		this.owner = owner;
+		this.name = name;
+		this.grammarChecksum = grammarChecksum;
+		this.numberOfDecisions = numberOfDecisions;
+	}
+
+	/** Unpack the tables of a decision, reading the resource if need be */
+	public synchronized DFATables getTables(int decisionNumber) {
+		DFATables t = tables.get(decisionNumber);
+		if ( t!=null ) return t;
+		load();
+		String[] e = encoded.get(decisionNumber);
+		if ( e==null ) {
+			throw new IllegalStateException(name+" has no tables for decision "+decisionNumber);
+		}
+		String[] rows = encodedRows.get(decisionNumber);
+		if ( rows!=null ) {
+			t = new DFATables(e[0], e[1], e[2], e[3], e[4], e[5], rows);
+		}
+		else {
+			t = new DFATables(e[0], e[1], e[2], e[3], e[4], e[5], e[6], e[7], e[8]);
+		}
+		tables.put(decisionNumber, t);
+		return t;
+	}
+
+	/** The lexer's char class map; null if its tables are indexed by char */
+	public synchronized char[] getCharClass() {
+		load();
+		return charClass;
+	}
+
+	protected void load() {
+		if ( encoded!=null ) return;
+		InputStream is = owner.getResourceAsStream(name);
+		if ( is==null ) {
+			Package pkg = owner.getPackage();
+			String dir = pkg==null ? "" : pkg.getName().replace('.', '/')+"/";
+			throw new IllegalStateException("can't find DFA tables "+dir+name+
+											" for "+owner.getName()+
+											"; copy it from the tool's output (or -ro) dir to the classpath");
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+			try {
+				read(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ioe) {
+			throw new IllegalStateException("can't read DFA tables "+name, ioe);
+		}
+	}
+
+	protected void read(DataInputStream in) throws IOException {
+		if ( in.readInt()!=MAGIC || in.readInt()!=VERSION ) {
+			throw new IOException(name+" is not a DFA table resource of version "+VERSION);
+		}
+		long checksum = in.readLong();
+		int decisions = in.readInt();
+		if ( checksum!=grammarChecksum || decisions!=numberOfDecisions ) {
+			throw new IOException(name+" is stale: it has "+decisions+" DFAs for grammar checksum 0x"+
+								  Long.toHexString(checksum)+" but "+owner.getName()+" was generated with "+
+								  numberOfDecisions+" for 0x"+Long.toHexString(grammarChecksum)+
+								  "; copy the "+name+" generated with it to the classpath");
+		}
+		String map = readString(in);
+		if ( map.length()>0 ) {
+			charClass = DFA.unpackEncodedStringToUnsignedChars(map);
+		}
+		Map<Integer, String[]> encoded = new HashMap<Integer, String[]>();
+		encodedRows = new HashMap<Integer, String[]>();
+		int n = in.readInt();
+		for (int i=0; i<n; i++) {
+			int decision = in.readInt();
+			boolean comb = in.readBoolean();
+			String[] e = new String[comb ? 9 : 6];
+			for (int j=0; j<e.length; j++) {
+				e[j] = readString(in);
+			}
+			encoded.put(decision, e);
+			if ( !comb ) {
+				String[] rows = new String[in.readInt()];
+				for (int j=0; j<rows.length; j++) {
+					rows[j] = readString(in);
+				}
+				encodedRows.put(decision, rows);
+			}
+		}
+		this.encoded = encoded;
+	}
+
+	protected static String readString(DataInputStream in) throws IOException {
+		char[] chars = new char[in.readInt()];
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** The unpacked tables of one DFA, shared by every instance of that DFA.
+ *  Generated DFAs build these on their first predict() rather than in
+ *  static initializers so recognizers with many decisions load fast.
+ *
+ *  All fields are final so a DFATables can be handed to other threads
+ *  without locking; at worst two threads unpack the same tables.
+ */
+public class DFATables {
+	public final short[] eot;
+	public final short[] eof;
+	public final char[] min;
+	public final char[] max;
+	public final short[] accept;
+	public final short[] special;
+	public final short[][] transition;
+	public final char[] base;
+	public final short[] next;
+	public final short[] check;
+
+	/** Unpack tables with one run-length encoded transition row per state */
+	public DFATables(String eotS, String eofS, String minS, String maxS,
+					 String acceptS, String specialS, String[] transitionS)
+	{
+		eot = DFA.unpackEncodedString(eotS);
+		eof = DFA.unpackEncodedString(eofS);
+		min = DFA.unpackEncodedStringToUnsignedChars(minS);
+		max = DFA.unpackEncodedStringToUnsignedChars(maxS);
+		accept = DFA.unpackEncodedString(acceptS);
+		special = DFA.unpackEncodedString(specialS);
+		transition = new short[transitionS.length][];
+		for (int i=0; i<transitionS.length; i++) {
+			transition[i] = DFA.unpackEncodedString(transitionS[i]);
+		}
+		base = null;
+		next = null;
+		check = null;
+	}
+
+	/** Unpack tables whose transitions are a comb vector */
+	public DFATables(String eotS, String eofS, String minS, String maxS,
+					 String acceptS, String specialS,
+					 String baseS, String nextS, String checkS)
+	{
+		eot = DFA.unpackEncodedString(eotS);
+		eof = DFA.unpackEncodedString(eofS);
+		min = DFA.unpackEncodedStringToUnsignedChars(minS);
+		max = DFA.unpackEncodedStringToUnsignedChars(maxS);
+		accept = DFA.unpackEncodedString(acceptS);
+		special = DFA.unpackEncodedString(specialS);
+		transition = null;
+		base = DFA.unpackEncodedStringToUnsignedChars(baseS);
+		next = DFA.unpackEncodedString(nextS);
+		check = DFA.unpackEncodedString(checkS);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** How a recognizer reacts to syntax errors.  Set one with
+ *  BaseRecognizer.setErrorStrategy() to take over match()'s in-line
+ *  recovery and the reportError()/recover() calls in generated rules.
+ *  Without one, the recognizer's own methods do single token insertion
+ *  and deletion, report every error and resync to the follow set.
+ *
+ *  @see BailErrorStrategy
+ */
+public interface ErrorStrategy {
+	/** match() found something other than ttype.  Return the symbol to
+	 *  use in its place or throw.
+	 */
+	public Object recoverFromMismatchedToken(BaseRecognizer recognizer,
+											 IntStream input,
+											 int ttype,
+											 BitSet follow)
+		throws RecognitionException;
+
+	/** A rule (or the lexer) caught e */
+	public void reportError(BaseRecognizer recognizer, RecognitionException e);
+
+	/** Get back in sync with the input after reportError() */
+	public void recover(BaseRecognizer recognizer,
+						IntStream input,
+						RecognitionException re);
+}
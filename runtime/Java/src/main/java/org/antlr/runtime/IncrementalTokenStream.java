@@ -0,0 +1,461 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/** A CommonTokenStream for documents that change, as in an editor.
+ *  Rather than relexing everything after an edit, edit() relexes from
+ *  the first token whose lexing looked at a damaged char and stops as
+ *  soon as the lexer emits a token of the same type and channel at the
+ *  (shifted) start of an old token past the damage.  From there on the
+ *  old tokens are reused.
+ *
+ *  A token can depend on chars past its end: with rules 'ab', 'abcd'
+ *  and 'c', the lexer reads all of "abce" to pick 'ab'.  So we record
+ *  how far past its end the lexer looked for each token (the input's
+ *  high-water mark during nextToken()) and restart at the first token
+ *  whose reach includes the edit.
+ *
+ *  Chars and tokens both live in gap buffers whose gaps sit at the last
+ *  edit (see ANTLREditableStringStream), so an edit costs the size of
+ *  the damage plus the distance from the previous edit.  Tokens after
+ *  the edit are not touched; they owe the edit's char and line shifts
+ *  and pick them up, along with their new token index, when they are
+ *  next read.  The one exception is tokens on the line where the edit
+ *  ends, whose columns are fixed right away.
+ *
+ *  As with ParallelLexer, this assumes the lexer carries no state from
+ *  one nextToken() call to the next, other than what it reads.  The
+ *  token source must be a Lexer reading an ANTLRStringStream that isn't
+ *  line-indexed; unless it is an ANTLREditableStringStream, the lexer
+ *  is switched to an editable copy.  Tokens must be CommonTokens.  Each
+ *  edit resets the stream to the first token as the parser will have to
+ *  start over anyway.
+ *
+ *     IncrementalTokenStream tokens = new IncrementalTokenStream(lexer);
+ *     tokens.fill();
+ *     ...
+ *     tokens.edit(42, 3, "foo"); // replace 3 chars at 42 with "foo"
+ */
+public class IncrementalTokenStream extends CommonTokenStream {
+	protected Lexer lexer;
+	protected ANTLREditableStringStream input;
+	protected TokenGapList buffer;
+
+	/** Index of first token relexed by last edit */
+	protected int lastRelexStart = -1;
+
+	/** How many tokens the last edit relexed */
+	protected int lastRelexCount = 0;
+
+	/** How far past its end the lexer looked for the last token lexed */
+	protected int lastLookahead;
+
+	/** The most any token has looked past its end; bounds the search
+	 *  for the restart token.
+	 */
+	protected int maxLookahead = 0;
+
+	/** The token buffer: a gap buffer of CommonTokens.  Tokens after the
+	 *  gap may still owe the char and line shifts of edits made since
+	 *  they were last read; get() settles up.
+	 */
+	protected static class TokenGapList extends AbstractList<Token> implements RandomAccess {
+		protected CommonToken[] tokens = new CommonToken[100];
+
+		/** tokens[gapStart..gapEnd-1] is free space */
+		protected int gapStart = 0;
+		protected int gapEnd = 100;
+
+		/** Sums of the char and line shifts of all edits so far */
+		protected int charShift;
+		protected int lineShift;
+
+		/** charShift and lineShift as of the last time the token in each
+		 *  slot after the gap was brought up to date
+		 */
+		protected int[] charShifted = new int[100];
+		protected int[] lineShifted = new int[100];
+
+		/** How many chars past its stop the lexer looked to pick the
+		 *  token in each slot
+		 */
+		protected int[] lookahead = new int[100];
+
+		public int size() {
+			return tokens.length-(gapEnd-gapStart);
+		}
+
+		public Token get(int i) {
+			if ( i<0 || i>=size() ) {
+				throw new IndexOutOfBoundsException("token index "+i+" out of range 0.."+(size()-1));
+			}
+			if ( i<gapStart ) {
+				return tokens[i];
+			}
+			return settle(i+gapEnd-gapStart, i);
+		}
+
+		/** Bring the token in slot k, at token index i, up to date */
+		protected CommonToken settle(int k, int i) {
+			CommonToken t = tokens[k];
+			int dc = charShift-charShifted[k];
+			if ( dc!=0 ) {
+				t.start += dc;
+				t.stop += dc;
+				charShifted[k] = charShift;
+			}
+			int dl = lineShift-lineShifted[k];
+			if ( dl!=0 ) {
+				if ( t.line>=0 ) {
+					t.line += dl;
+				}
+				lineShifted[k] = lineShift;
+			}
+			t.index = i;
+			return t;
+		}
+
+		public void add(int i, Token t) {
+			add(i, t, 0);
+		}
+
+		protected void add(int i, Token t, int la) {
+			if ( !(t instanceof CommonToken) ) {
+				throw new IllegalArgumentException("IncrementalTokenStream needs CommonTokens, not "+
+												   t.getClass().getName());
+			}
+			if ( i<0 || i>size() ) {
+				throw new IndexOutOfBoundsException("token index "+i+" out of range 0.."+size());
+			}
+			moveGap(i);
+			if ( gapStart==gapEnd ) {
+				growGap(1);
+			}
+			lookahead[gapStart] = la;
+			tokens[gapStart++] = (CommonToken)t;
+		}
+
+		/** How many chars past its stop the lexer looked for token i */
+		protected int lookahead(int i) {
+			return i<gapStart ? lookahead[i] : lookahead[i+gapEnd-gapStart];
+		}
+
+		public void clear() {
+			tokens = new CommonToken[100];
+			charShifted = new int[100];
+			lineShifted = new int[100];
+			lookahead = new int[100];
+			gapStart = 0;
+			gapEnd = 100;
+			charShift = 0;
+			lineShift = 0;
+		}
+
+		/** Replace tokens from..to-1 with replacements, which looked la[i]
+		 *  chars ahead, and shift all later tokens by charDelta chars and
+		 *  lineDelta lines.  Only the replacements get new token indexes
+		 *  now.
+		 */
+		protected void replace(int from, int to, List<Token> replacements, int[] la,
+							   int charDelta, int lineDelta)
+		{
+			moveGap(from);
+			gapEnd += to-from;
+			int n = replacements.size();
+			if ( gapEnd-gapStart<n ) {
+				growGap(n);
+			}
+			for (int i=0; i<n; i++) {
+				CommonToken t = (CommonToken)replacements.get(i);
+				t.index = gapStart;
+				lookahead[gapStart] = la[i];
+				tokens[gapStart++] = t;
+			}
+			charShift += charDelta;
+			lineShift += lineDelta;
+		}
+
+		/** Move the gap so it starts at token index i */
+		protected void moveGap(int i) {
+			if ( gapStart==gapEnd ) { // no gap; nothing moves, only the marks
+				for (int k=gapStart; k<tokens.length; k++) {
+					settle(k, k);
+				}
+				for (int k=i; k<gapStart; k++) {
+					charShifted[k] = charShift;
+					lineShifted[k] = lineShift;
+				}
+				gapStart = gapEnd = i;
+				return;
+			}
+			while ( gapStart>i ) { // settled tokens move after the gap
+				gapStart--;
+				gapEnd--;
+				tokens[gapEnd] = tokens[gapStart];
+				tokens[gapStart] = null;
+				lookahead[gapEnd] = lookahead[gapStart];
+				charShifted[gapEnd] = charShift;
+				lineShifted[gapEnd] = lineShift;
+			}
+			while ( gapStart<i ) { // tokens after the gap settle up first
+				tokens[gapStart] = settle(gapEnd, gapStart);
+				tokens[gapEnd] = null;
+				lookahead[gapStart] = lookahead[gapEnd];
+				gapStart++;
+				gapEnd++;
+			}
+		}
+
+		protected void growGap(int needed) {
+			int after = tokens.length-gapEnd;
+			int n = Math.max(tokens.length*2, size()+needed+100);
+			CommonToken[] biggerTokens = new CommonToken[n];
+			int[] biggerCharShifted = new int[n];
+			int[] biggerLineShifted = new int[n];
+			int[] biggerLookahead = new int[n];
+			System.arraycopy(tokens, 0, biggerTokens, 0, gapStart);
+			System.arraycopy(lookahead, 0, biggerLookahead, 0, gapStart);
+			System.arraycopy(lookahead, gapEnd, biggerLookahead, n-after, after);
+			System.arraycopy(tokens, gapEnd, biggerTokens, n-after, after);
+			System.arraycopy(charShifted, gapEnd, biggerCharShifted, n-after, after);
+			System.arraycopy(lineShifted, gapEnd, biggerLineShifted, n-after, after);
+			tokens = biggerTokens;
+			charShifted = biggerCharShifted;
+			lineShifted = biggerLineShifted;
+			lookahead = biggerLookahead;
+			gapEnd = n-after;
+		}
+	}
+
+	public IncrementalTokenStream(Lexer lexer) {
+		this(lexer, Token.DEFAULT_CHANNEL);
+	}
+
+	public IncrementalTokenStream(Lexer lexer, int channel) {
+		super(lexer, channel);
+		CharStream in = lexer.getCharStream();
+		if ( !(in instanceof ANTLRStringStream) ) {
+			throw new IllegalArgumentException("IncrementalTokenStream needs a lexer reading an ANTLRStringStream");
+		}
+		if ( ((ANTLRStringStream)in).isLineIndexed() ) {
+			throw new IllegalArgumentException("IncrementalTokenStream can't edit a line-indexed stream");
+		}
+		if ( !(in instanceof ANTLREditableStringStream) ) {
+			ANTLREditableStringStream copy = new ANTLREditableStringStream(in.toString());
+			copy.name = ((ANTLRStringStream)in).name;
+			lexer.setCharStream(copy);
+			in = copy;
+		}
+		this.lexer = lexer;
+		this.input = (ANTLREditableStringStream)in;
+		this.buffer = new TokenGapList();
+		super.setTokenBuffer(buffer);
+	}
+
+	/** Edits need a buffer of CommonTokens they can patch, so the
+	 *  buffer can't be replaced; e.g., by a ColumnarTokenList.
+	 */
+	public void setTokenBuffer(List<Token> tokens) {
+		throw new UnsupportedOperationException("IncrementalTokenStream keeps its own token buffer");
+	}
+
+	/** Fetch like BufferedTokenStream but note each token's lookahead */
+	protected void fetch(int n) {
+		for (int i=1; i<=n; i++) {
+			CommonToken t = lexToken();
+			t.setTokenIndex(buffer.size());
+			buffer.add(buffer.size(), t, lastLookahead);
+			if ( t.getType()==Token.EOF ) break;
+		}
+	}
+
+	/** Get the next token from the lexer and set lastLookahead */
+	protected CommonToken lexToken() {
+		input.resetHighWaterMark();
+		CommonToken t = (CommonToken)lexer.nextToken();
+		lastLookahead = Math.max(0, input.getHighWaterMark()-t.getStopIndex());
+		if ( lastLookahead>maxLookahead ) {
+			maxLookahead = lastLookahead;
+		}
+		return t;
+	}
+
+	/** Replace deletedLength chars at offset with text and bring the
+	 *  tokens up to date.  Returns the number of tokens relexed.
+	 */
+	public int edit(int offset, int deletedLength, String text) {
+		if ( buffer.size()==0 || buffer.get(buffer.size()-1).getType()!=Token.EOF ) {
+			fill();
+		}
+		if ( offset<0 || deletedLength<0 || offset+deletedLength>input.size() ) {
+			throw new IndexOutOfBoundsException("can't edit "+offset+".."+
+												(offset+deletedLength-1)+" in 0.."+(input.size()-1));
+		}
+		int delta = text.length()-deletedLength;
+		int damageEnd = offset+deletedLength; // old index of first undamaged char
+
+		// Restart at the first token whose lexing read a damaged char:
+		// any token ending at or past offset, or an earlier one whose
+		// lookahead reached offset.
+		int r = firstTokenEndingAtOrAfter(offset);
+		for (int k=r-1; k>=0 && stop(k)+maxLookahead>=offset; k--) {
+			if ( stop(k)+buffer.lookahead(k)>=offset ) {
+				r = k;
+			}
+		}
+		// The lexer produced token r starting right after token r-1, maybe
+		// skipping chars first, so start there
+		int restartIndex = 0;
+		int restartLine = 1;
+		int restartPos = 0;
+		if ( r>0 ) {
+			CommonToken prev = (CommonToken)buffer.get(r-1);
+			restartLine = prev.line;
+			restartPos = prev.charPositionInLine;
+			for (int i=prev.getStartIndex(); i<=prev.getStopIndex(); i++) {
+				if ( input.charAt(i)=='\n' ) {
+					restartLine++;
+					restartPos = 0;
+				}
+				else {
+					restartPos++;
+				}
+			}
+			restartIndex = prev.getStopIndex()+1;
+		}
+
+		input.replace(offset, deletedLength, text);
+		input.p = restartIndex;
+		input.line = restartLine;
+		input.charPositionInLine = restartPos;
+		input.markDepth = 0;
+
+		// old tokens entirely past the damage are candidates for resync
+		int j = r;
+		while ( j<buffer.size() && start(j)<damageEnd ) {
+			j++;
+		}
+		List<Token> relexed = new ArrayList<Token>();
+		int[] la = new int[16];
+		CommonToken resync = null;
+		int lineDelta = 0;
+		int posDelta = 0;
+		int oldLine = 0;
+		while ( true ) {
+			CommonToken t = lexToken();
+			// skip old tokens the new one has passed by
+			while ( j<buffer.size() && start(j)+delta<t.getStartIndex() ) {
+				j++;
+			}
+			if ( j<buffer.size() ) {
+				CommonToken old = (CommonToken)buffer.get(j);
+				if ( old.getStartIndex()+delta==t.getStartIndex() &&
+					 old.getType()==t.getType() && old.getChannel()==t.getChannel() )
+				{
+					resync = old;
+					oldLine = old.line;
+					lineDelta = t.line-old.line;
+					posDelta = t.charPositionInLine-old.charPositionInLine;
+					break;
+				}
+			}
+			if ( relexed.size()==la.length ) {
+				int[] bigger = new int[la.length*2];
+				System.arraycopy(la, 0, bigger, 0, la.length);
+				la = bigger;
+			}
+			la[relexed.size()] = lastLookahead;
+			relexed.add(t);
+			if ( t.getType()==Token.EOF ) {
+				j = buffer.size();
+				break;
+			}
+		}
+
+		// splice new tokens in place of r..j-1; later tokens owe the shift
+		buffer.replace(r, j, relexed, la, delta, lineDelta);
+		if ( resync!=null && posDelta!=0 && oldLine>=0 ) {
+			// columns shift only on the line the edit ends on
+			int line = oldLine+lineDelta;
+			for (int i=r+relexed.size(); i<buffer.size(); i++) {
+				CommonToken t = (CommonToken)buffer.get(i);
+				if ( t.line!=line ) {
+					break;
+				}
+				t.charPositionInLine += posDelta;
+			}
+		}
+		lastRelexStart = r;
+		lastRelexCount = relexed.size();
+
+		// rebuild on-channel index from r on and start over
+		int slot = 0;
+		while ( slot<numOnChannel && onChannel[slot]<r ) {
+			slot++;
+		}
+		numOnChannel = slot;
+		indexed = Math.min(indexed, r); // reindexed lazily
+		pSlot = 0;
+		p = -1;
+		range = -1;
+		return relexed.size();
+	}
+
+	/** Binary search for the first token whose stop is >= i */
+	protected int firstTokenEndingAtOrAfter(int i) {
+		int lo = 0;
+		int hi = buffer.size()-1; // EOF ends after everything
+		while ( lo<hi ) {
+			int mid = (lo+hi)>>>1;
+			if ( ((CommonToken)buffer.get(mid)).getStopIndex()>=i ) hi = mid;
+			else lo = mid+1;
+		}
+		return lo;
+	}
+
+	protected int start(int i) {
+		return ((CommonToken)buffer.get(i)).getStartIndex();
+	}
+
+	protected int stop(int i) {
+		return ((CommonToken)buffer.get(i)).getStopIndex();
+	}
+
+	public int getLastRelexStart() {
+		return lastRelexStart;
+	}
+
+	public int getLastRelexCount() {
+		return lastRelexCount;
+	}
+}
@@ -36,6 +36,16 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	/** Where is the lexer drawing characters from? */
 	protected CharStream input;
 
+	/** How emit() creates tokens */
+	protected TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
+
+	/** Thrown again and again by match() and matchRange() when
+	 *  exceptions don't capture stack traces; see
+	 *  RecognitionException.captureStackTraces.
+	 */
+	protected MismatchedTokenException mismatchedToken;
+	protected MismatchedRangeException mismatchedRange;
+
 	public Lexer() {
 	}
 
@@ -54,6 +64,9 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		if ( input!=null ) {
 			input.seek(0); // rewind the input
 		}
+		// reused exceptions would keep the old input alive
+		mismatchedToken = null;
+		mismatchedRange = null;
 		if ( state==null ) {
 			return; // no shared state work to do
 		}
@@ -70,42 +83,64 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	 *  stream.
 	 */
 	public Token nextToken() {
+		// line-indexed input computes line info later, only if asked
+		boolean offsetsOnly = isLineIndexed();
+		// only input that discards chars needs the token start pinned
+		WindowedCharStream windowed = null;
+		if ( input instanceof WindowedCharStream ) {
+			windowed = (WindowedCharStream)input;
+		}
 		while (true) {
 			state.token = null;
 			state.channel = Token.DEFAULT_CHANNEL;
 			state.tokenStartCharIndex = input.index();
-			state.tokenStartCharPositionInLine = input.getCharPositionInLine();
-			state.tokenStartLine = input.getLine();
+			if ( offsetsOnly ) {
+				state.tokenStartCharPositionInLine = -1;
+				state.tokenStartLine = -1;
+			}
+			else {
+				state.tokenStartCharPositionInLine = input.getCharPositionInLine();
+				state.tokenStartLine = input.getLine();
+			}
 			state.text = null;
-			if ( input.LA(1)==CharStream.EOF ) {
-                Token eof = new CommonToken((CharStream)input,Token.EOF,
-                                            Token.DEFAULT_CHANNEL,
-                                            input.index(),input.index());
-                eof.setLine(getLine());
-                eof.setCharPositionInLine(getCharPositionInLine());
-                return eof;
+			if ( windowed!=null ) { // keep the token's text in the window
+				windowed.pinTokenStart(state.tokenStartCharIndex);
 			}
 			try {
-				mTokens();
-				if ( state.token==null ) {
-					emit();
+				if ( input.LA(1)==CharStream.EOF ) {
+					return tokenFactory.create(input, Token.EOF, null,
+											   Token.DEFAULT_CHANNEL,
+											   input.index(), input.index(),
+											   offsetsOnly ? -1 : getLine(),
+											   offsetsOnly ? -1 : getCharPositionInLine());
 				}
-				else if ( state.token==Token.SKIP_TOKEN ) {
-					continue;
+				try {
+					mTokens();
+					if ( state.token==null ) {
+						emit();
+					}
+					else if ( state.token==Token.SKIP_TOKEN ) {
+						continue;
+					}
+					return state.token;
+				}
+				catch (MismatchedRangeException re) {
+					reportError(re);
+					// matchRange() routine has already called recover()
+				}
+				catch (MismatchedTokenException re) {
+					reportError(re);
+					// match() routine has already called recover()
+				}
+				catch (RecognitionException re) {
+					reportError(re);
+					recover(re); // throw out current char and try again
 				}
-				return state.token;
-			}
-			catch (MismatchedRangeException re) {
-				reportError(re);
-				// matchRange() routine has already called recover()
-			}
-			catch (MismatchedTokenException re) {
-				reportError(re);
-				// match() routine has already called recover()
 			}
-			catch (RecognitionException re) {
-				reportError(re);
-				recover(re); // throw out current char and try again
+			finally {
+				if ( windowed!=null ) {
+					windowed.unpinTokenStart();
+				}
 			}
 		}
 	}
@@ -134,6 +169,32 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		return this.input;
 	}
 
+	public void setTokenFactory(TokenFactory tokenFactory) {
+		this.tokenFactory = tokenFactory;
+	}
+
+	public TokenFactory getTokenFactory() {
+		return tokenFactory;
+	}
+
+	/** Chars after which this lexer can start over with no knowledge of
+	 *  what came before; e.g., "\n" if no token spans lines.  Grammars
+	 *  declare these with the splitAfter option, which also generates a
+	 *  SPLIT_AFTER_CHARS constant for a ParallelLexer.LexerFactory to
+	 *  return.  ParallelLexer splits input only at these points.  Null
+	 *  means nowhere is safe.
+	 */
+	public String getSplitAfterChars() {
+		return null;
+	}
+
+	/** A checksum of the grammar this lexer was generated from so saved
+	 *  tokens (see TokenSnapshot) can tell it changed.  0 means unknown.
+	 */
+	public long getGrammarChecksum() {
+		return 0;
+	}
+
 	public String getSourceName() {
 		return input.getSourceName();
 	}
@@ -150,17 +211,18 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	/** The standard method called to automatically emit a token at the
 	 *  outermost lexical rule.  The token object should point into the
 	 *  char buffer start..stop.  If there is a text override in 'text',
-	 *  use that to set the token's text.  Override this method to emit
-	 *  custom Token objects.
+	 *  use that to set the token's text.  The token comes from the
+	 *  tokenFactory; set a different factory or override this method to
+	 *  emit custom Token objects.  To share one String among tokens with
+	 *  the same text, use a CommonTokenFactory with a TokenTextCache.
 	 *
 	 *  If you are building trees, then you should also override
 	 *  Parser or TreeParser.getMissingSymbol().
 	 */
 	public Token emit() {
-		Token t = new CommonToken(input, state.type, state.channel, state.tokenStartCharIndex, getCharIndex()-1);
-		t.setLine(state.tokenStartLine);
-		t.setText(state.text);
-		t.setCharPositionInLine(state.tokenStartCharPositionInLine);
+		Token t = tokenFactory.create(input, state.type, state.text, state.channel,
+									  state.tokenStartCharIndex, getCharIndex()-1,
+									  state.tokenStartLine, state.tokenStartCharPositionInLine);
 		emit(t);
 		return t;
 	}
@@ -173,8 +235,7 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 					state.failed = true;
 					return;
 				}
-				MismatchedTokenException mte =
-					new MismatchedTokenException(s.charAt(i), input);
+				MismatchedTokenException mte = mismatchedToken(s.charAt(i));
 				recover(mte);
 				throw mte;
 			}
@@ -194,8 +255,7 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 				state.failed = true;
 				return;
 			}
-			MismatchedTokenException mte =
-				new MismatchedTokenException(c, input);
+			MismatchedTokenException mte = mismatchedToken(c);
 			recover(mte);  // don't really recover; just consume in lexer
 			throw mte;
 		}
@@ -211,8 +271,7 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 				state.failed = true;
 				return;
 			}
-			MismatchedRangeException mre =
-				new MismatchedRangeException(a,b,input);
+			MismatchedRangeException mre = mismatchedRange(a, b);
 			recover(mre);
 			throw mre;
 		}
@@ -220,10 +279,68 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		state.failed = false;
 	}
 
+	/** A MismatchedTokenException at the current char; the same one
+	 *  each time unless exceptions capture stack traces.
+	 */
+	protected MismatchedTokenException mismatchedToken(int c) {
+		if ( RecognitionException.captureStackTraces ) {
+			return new MismatchedTokenException(c, input);
+		}
+		if ( mismatchedToken==null ) {
+			mismatchedToken = new MismatchedTokenException(c, input);
+		}
+		else {
+			mismatchedToken.locate(input);
+			mismatchedToken.expecting = c;
+		}
+		return mismatchedToken;
+	}
+
+	protected MismatchedRangeException mismatchedRange(int a, int b) {
+		if ( RecognitionException.captureStackTraces ) {
+			return new MismatchedRangeException(a, b, input);
+		}
+		if ( mismatchedRange==null ) {
+			mismatchedRange = new MismatchedRangeException(a, b, input);
+		}
+		else {
+			mismatchedRange.locate(input);
+			mismatchedRange.a = a;
+			mismatchedRange.b = b;
+		}
+		return mismatchedRange;
+	}
+
 	public int getLine() {
 		return input.getLine();
 	}
 
+	/** Line of the current token's first char; computed from its char
+	 *  index when the input is line-indexed.  This is what $line reads
+	 *  in actions; $line = expr; still sets state.tokenStartLine.
+	 */
+	public int getTokenStartLine() {
+		if ( state.tokenStartLine<0 && isLineIndexed() ) {
+			return ((LineIndexedCharStream)input).getLine(state.tokenStartCharIndex);
+		}
+		return state.tokenStartLine;
+	}
+
+	public int getTokenStartCharPositionInLine() {
+		if ( state.tokenStartCharPositionInLine<0 && isLineIndexed() ) {
+			return ((LineIndexedCharStream)input).getCharPositionInLine(state.tokenStartCharIndex);
+		}
+		return state.tokenStartCharPositionInLine;
+	}
+
+	/** Does the input compute line info on demand?  If so, tokens record
+	 *  just char indexes and line info is looked up from the input.
+	 */
+	protected boolean isLineIndexed() {
+		return input instanceof LineIndexedCharStream &&
+			   ((LineIndexedCharStream)input).isLineIndexed();
+	}
+
 	public int getCharPositionInLine() {
 		return input.getCharPositionInLine();
 	}
@@ -251,6 +368,10 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	}
 
 	public void reportError(RecognitionException e) {
+		if ( state.errorStrategy!=null ) {
+			state.errorStrategy.reportError(this, e);
+			return;
+		}
 		/** TODO: not thought about recovery in lexer yet.
 		 *
 		// if we've already reported an error and have not matched a token
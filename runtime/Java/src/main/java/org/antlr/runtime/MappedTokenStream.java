@@ -0,0 +1,461 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A CommonTokenStream over a snapshot written by TokenSnapshot.  The
+ *  file is mapped into memory and no lexer runs.  Tokens are TokenView
+ *  flyweights that read through to the mapped columns, so the buffer
+ *  costs next to nothing beyond the mapping; compare them with equals()
+ *  rather than ==.  Token text comes from the input chars, as with
+ *  lexed tokens, except for tokens whose text the snapshot holds.
+ *
+ *  The mapping is read-only.  Changing a token (setText(), setChannel(),
+ *  ...) copies it into a CommonToken that the view reads through to
+ *  from then on.
+ *
+ *  The constructors throw an IOException if the snapshot was taken from
+ *  different input or with a different grammar.  Use
+ *  TokenSnapshot.isCurrent() to check first if you'd rather relex; then
+ *  tell the constructor so it doesn't checksum the input again:
+ *
+ *     File snap = new File("Big.java.tokens");
+ *     CharStream input = new ANTLRFileStream("Big.java");
+ *     MyLexer lexer = new MyLexer(input);
+ *     long grammar = TokenSnapshot.grammarChecksum(lexer);
+ *     CommonTokenStream tokens;
+ *     if ( TokenSnapshot.isCurrent(snap, input, grammar) ) {
+ *         tokens = new MappedTokenStream(snap, input, grammar, Token.DEFAULT_CHANNEL, false);
+ *     }
+ *     else {
+ *         tokens = new CommonTokenStream(lexer);
+ *         TokenSnapshot.write(tokens, snap);
+ *     }
+ */
+public class MappedTokenStream extends CommonTokenStream {
+	/** Replays the tokens in a mapped snapshot */
+	public static class SnapshotSource implements TokenSource {
+		/** How many recently handed out views we keep for reuse */
+		protected static final int VIEW_CACHE_SIZE = 64;
+
+		protected File file;
+		protected CharStream input;
+		protected int count;
+		protected IntBuffer[] columns = new IntBuffer[TokenSnapshot.NUM_COLUMNS];
+
+		/** Token indexes with text in the table, their offsets into chars */
+		protected IntBuffer textIndexes;
+		protected IntBuffer textOffsets;
+		protected CharBuffer chars;
+		protected int numTexts;
+
+		/** Index of next token to hand out */
+		protected int next = 0;
+
+		/** Tokens changed since loading (and a made up EOF if the
+		 *  snapshot has none) by token index.
+		 */
+		protected Map<Integer, CommonToken> edits = new HashMap<Integer, CommonToken>();
+
+		protected TokenView[] views = new TokenView[VIEW_CACHE_SIZE];
+
+		public SnapshotSource(File file, CharStream input, long grammarChecksum)
+			throws IOException
+		{
+			this(file, input, grammarChecksum, true);
+		}
+
+		/** If checkInput is false, trust that input is the one the
+		 *  snapshot was taken from; e.g., TokenSnapshot.isCurrent() just
+		 *  said so.  We still check its size and the grammar.
+		 */
+		public SnapshotSource(File file, CharStream input, long grammarChecksum,
+							  boolean checkInput)
+			throws IOException
+		{
+			this.file = file;
+			this.input = input;
+			ByteBuffer buf = map(file);
+			if ( buf.capacity()<TokenSnapshot.HEADER_SIZE ) {
+				throw new IOException(file+": not a token snapshot");
+			}
+			String stale = TokenSnapshot.staleReason(buf, input, grammarChecksum, checkInput);
+			if ( stale!=null ) throw new IOException(file+": "+stale);
+			count = buf.getInt(12);
+			int offset = TokenSnapshot.HEADER_SIZE;
+			long textTable = offset + (long)count*4*TokenSnapshot.NUM_COLUMNS;
+			if ( count<0 || textTable+4>buf.capacity() ) {
+				throw new IOException(file+": truncated token snapshot");
+			}
+			for (int c=0; c<TokenSnapshot.NUM_COLUMNS; c++) {
+				columns[c] = slice(buf, offset, count*4).asIntBuffer();
+				offset += count*4;
+			}
+			numTexts = buf.getInt(offset);
+			offset += 4;
+			if ( numTexts<0 || offset+(long)(2*numTexts+1)*4>buf.capacity() ) {
+				throw new IOException(file+": truncated token snapshot");
+			}
+			textIndexes = slice(buf, offset, numTexts*4).asIntBuffer();
+			offset += numTexts*4;
+			textOffsets = slice(buf, offset, (numTexts+1)*4).asIntBuffer();
+			offset += (numTexts+1)*4;
+			int numChars = textOffsets.get(numTexts);
+			if ( numChars<0 || offset+(long)numChars*2>buf.capacity() ) {
+				throw new IOException(file+": truncated token snapshot");
+			}
+			chars = slice(buf, offset, numChars*2).asCharBuffer();
+		}
+
+		/** A token living at index in the mapped columns */
+		public class TokenView implements TextViewToken {
+			protected final int index;
+
+			public TokenView(int index) {
+				this.index = index;
+			}
+
+			public SnapshotSource getSnapshot() {
+				return SnapshotSource.this;
+			}
+
+			/** The copy we read through to if the token has been changed */
+			protected CommonToken edited() {
+				if ( edits.isEmpty() ) return null;
+				return edits.get(index);
+			}
+
+			protected CommonToken edit() {
+				CommonToken t = edited();
+				if ( t==null ) {
+					t = new CommonToken(input, getType(), getChannel(),
+										getStartIndex(), getStopIndex());
+					t.setLine(getLine());
+					t.setCharPositionInLine(getCharPositionInLine());
+					t.setTokenIndex(index);
+					String text = storedText(index);
+					if ( text!=null ) t.setText(text);
+					edits.put(index, t);
+				}
+				return t;
+			}
+
+			public String getText() {
+				CommonToken e = edited();
+				if ( e!=null ) return e.getText();
+				String text = storedText(index);
+				if ( text!=null ) return text;
+				if ( input==null ) return null;
+				int start = getStartIndex();
+				int stop = getStopIndex();
+				int n = input.size();
+				if ( start<n && stop<n) {
+					return input.substring(start,stop);
+				}
+				return "<EOF>";
+			}
+
+			public CharSequence getTextView() {
+				CommonToken e = edited();
+				if ( e!=null ) return e.getTextView();
+				String text = storedText(index);
+				if ( text!=null ) return text;
+				if ( input==null ) return null;
+				int start = getStartIndex();
+				int stop = getStopIndex();
+				int n = input.size();
+				if ( start<n && stop<n) {
+					return CharArrayView.substringView(input, start, stop);
+				}
+				return "<EOF>";
+			}
+
+			public void setText(String text) { edit().setText(text); }
+
+			public int getType() {
+				CommonToken e = edited();
+				return e!=null ? e.getType() : columns[TokenSnapshot.TYPE].get(index);
+			}
+
+			public void setType(int ttype) { edit().setType(ttype); }
+
+			public int getLine() {
+				CommonToken e = edited();
+				return e!=null ? e.getLine() : columns[TokenSnapshot.LINE].get(index);
+			}
+
+			public void setLine(int line) { edit().setLine(line); }
+
+			public int getCharPositionInLine() {
+				CommonToken e = edited();
+				return e!=null ? e.getCharPositionInLine() : columns[TokenSnapshot.POS].get(index);
+			}
+
+			public void setCharPositionInLine(int pos) { edit().setCharPositionInLine(pos); }
+
+			public int getChannel() {
+				CommonToken e = edited();
+				return e!=null ? e.getChannel() : columns[TokenSnapshot.CHANNEL].get(index);
+			}
+
+			public void setChannel(int channel) { edit().setChannel(channel); }
+
+			public int getStartIndex() {
+				CommonToken e = edited();
+				return e!=null ? e.getStartIndex() : columns[TokenSnapshot.START].get(index);
+			}
+
+			public void setStartIndex(int start) { edit().setStartIndex(start); }
+
+			public int getStopIndex() {
+				CommonToken e = edited();
+				return e!=null ? e.getStopIndex() : columns[TokenSnapshot.STOP].get(index);
+			}
+
+			public void setStopIndex(int stop) { edit().setStopIndex(stop); }
+
+			public int getTokenIndex() { return index; }
+
+			/** A view's index is its position in the snapshot; can't change it */
+			public void setTokenIndex(int index) {
+				if ( index!=this.index ) {
+					throw new UnsupportedOperationException("can't move token "+this.index+" to index "+index);
+				}
+			}
+
+			public CharStream getInputStream() {
+				CommonToken e = edited();
+				return e!=null ? e.getInputStream() : input;
+			}
+
+			public void setInputStream(CharStream input) { edit().setInputStream(input); }
+
+			public boolean equals(Object o) {
+				if ( !(o instanceof TokenView) ) {
+					return false;
+				}
+				TokenView other = (TokenView)o;
+				return other.index==index && other.getSnapshot()==getSnapshot();
+			}
+
+			public int hashCode() {
+				return index;
+			}
+
+			public String toString() {
+				String channelStr = "";
+				if ( getChannel()>0 ) {
+					channelStr=",channel="+getChannel();
+				}
+				String txt = getText();
+				if ( txt!=null ) {
+					txt = txt.replaceAll("\n","\\\\n");
+					txt = txt.replaceAll("\r","\\\\r");
+					txt = txt.replaceAll("\t","\\\\t");
+				}
+				else {
+					txt = "<no text>";
+				}
+				return "[@"+getTokenIndex()+","+getStartIndex()+":"+getStopIndex()+"='"+txt+"',<"+getType()+">"+channelStr+","+getLine()+":"+getCharPositionInLine()+"]";
+			}
+		}
+
+		public Token nextToken() {
+			if ( next<count ) return getToken(next++);
+			if ( count>0 && getType(count-1)==Token.EOF ) return getToken(count-1);
+			if ( !edits.containsKey(count) ) {
+				// snapshot without EOF; make one up past the last token
+				CommonToken eof = new CommonToken(input, Token.EOF, Token.DEFAULT_CHANNEL,
+												  input!=null ? input.size() : 0,
+												  input!=null ? input.size() : 0);
+				eof.setTokenIndex(count);
+				edits.put(count, eof);
+			}
+			return getToken(count);
+		}
+
+		/** The token at index, as a view onto the mapping */
+		public Token getToken(int i) {
+			int slot = i & (views.length-1);
+			TokenView v = views[slot];
+			if ( v==null || v.index!=i ) {
+				v = new TokenView(i);
+				views[slot] = v;
+			}
+			return v;
+		}
+
+		public int getType(int i) {
+			CommonToken e = edits.isEmpty() ? null : edits.get(i);
+			return e!=null ? e.getType() : columns[TokenSnapshot.TYPE].get(i);
+		}
+
+		/** The text the snapshot holds for token i or null if it comes
+		 *  from the input.
+		 */
+		protected String storedText(int i) {
+			int lo = 0;
+			int hi = numTexts; // search textIndexes[0..numTexts) for i
+			while ( lo<hi ) {
+				int mid = (lo+hi)>>>1;
+				int at = textIndexes.get(mid);
+				if ( at<i ) lo = mid+1;
+				else if ( at>i ) hi = mid;
+				else {
+					int from = textOffsets.get(mid);
+					int to = textOffsets.get(mid+1);
+					char[] text = new char[to-from];
+					for (int k=0; k<text.length; k++) text[k] = chars.get(from+k);
+					return new String(text);
+				}
+			}
+			return null;
+		}
+
+		/** How many tokens, including EOF, the snapshot holds */
+		public int size() { return count; }
+
+		public String getSourceName() {
+			if ( input!=null ) return input.getSourceName();
+			return file.getPath();
+		}
+
+		protected static ByteBuffer map(File file) throws IOException {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				long length = f.length();
+				if ( length>Integer.MAX_VALUE ) {
+					throw new IOException(file+": token snapshot too big to map");
+				}
+				return f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+			finally {
+				f.close(); // mapping stays valid
+			}
+		}
+
+		protected static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+			ByteBuffer dup = buf.duplicate();
+			dup.position(offset);
+			dup.limit(offset+length);
+			return dup.slice();
+		}
+	}
+
+	/** The token buffer of a MappedTokenStream: just a count of how many
+	 *  snapshot tokens have been fetched, so the stream holds no token
+	 *  objects of its own.
+	 */
+	public static class SnapshotTokenList extends AbstractList<Token> {
+		protected SnapshotSource source;
+		protected int n = 0;
+
+		public SnapshotTokenList(SnapshotSource source) {
+			this.source = source;
+		}
+
+		public int size() {
+			return n;
+		}
+
+		public Token get(int i) {
+			if ( i<0 || i>=n ) {
+				throw new IndexOutOfBoundsException("token index "+i+" out of range 0.."+(n-1));
+			}
+			return source.getToken(i);
+		}
+
+		/** Accept the source's next token; it's already in the mapping */
+		public boolean add(Token t) {
+			if ( t.getTokenIndex()!=n ||
+				 !(t instanceof SnapshotSource.TokenView) ||
+				 ((SnapshotSource.TokenView)t).getSnapshot()!=source )
+			{
+				throw new IllegalArgumentException("not token "+n+" of "+source.getSourceName());
+			}
+			n++;
+			modCount++;
+			return true;
+		}
+
+		public void clear() {
+			n = 0;
+			modCount++;
+		}
+	}
+
+	/** Load tokens for lexer's input without running lexer */
+	public MappedTokenStream(File file, Lexer lexer) throws IOException {
+		this(file, lexer.getCharStream(), TokenSnapshot.grammarChecksum(lexer));
+	}
+
+	/** Load tokens for input; null input is ok if the snapshot has all
+	 *  token text.
+	 */
+	public MappedTokenStream(File file, CharStream input, long grammarChecksum)
+		throws IOException
+	{
+		this(file, input, grammarChecksum, Token.DEFAULT_CHANNEL);
+	}
+
+	public MappedTokenStream(File file, CharStream input, long grammarChecksum, int channel)
+		throws IOException
+	{
+		this(file, input, grammarChecksum, channel, true);
+	}
+
+	/** Pass checkInput=false right after TokenSnapshot.isCurrent() said
+	 *  yes to skip checksumming the input a second time.
+	 */
+	public MappedTokenStream(File file, CharStream input, long grammarChecksum, int channel,
+							 boolean checkInput)
+		throws IOException
+	{
+		super(new SnapshotSource(file, input, grammarChecksum, checkInput), channel);
+		super.setTokenBuffer(new SnapshotTokenList((SnapshotSource)tokenSource));
+	}
+
+	/** A MappedTokenStream reads its tokens from the mapping */
+	public void setTokenBuffer(java.util.List<Token> tokens) {
+		throw new UnsupportedOperationException("MappedTokenStream keeps its own token buffer");
+	}
+
+	public void setTokenSource(TokenSource tokenSource) {
+		throw new UnsupportedOperationException("MappedTokenStream can't change its token source");
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+
+/** Lex a large input in chunks on several threads and merge the results
+ *  into one token stream that looks just like lexing it sequentially.
+ *
+ *  The input is split only right after one of the lexer's split chars
+ *  (see LexerFactory.getSplitAfterChars() and the splitAfter grammar
+ *  option).
+ *  Each chunk gets its own lexer over a shared, uncopied view of the
+ *  chars that starts with the right line and column.  A chunk's lexer
+ *  stops at the first token starting at or past the chunk's end.  If that
+ *  token starts exactly where the next chunk starts, the seam is clean.
+ *  Otherwise a token crossed the split, so we keep lexing with the left
+ *  chunk's lexer until it emits a token starting where one of the right
+ *  chunk's tokens starts, then continue with the right chunk's tokens.
+ *
+ *  This is only correct if the lexer really is context-free after each
+ *  split char: same chars in, same tokens out, no matter what came
+ *  before.
+ *
+ *  Lexer errors are held back until the chunks are merged.  Then only
+ *  those a lexer hit while lexing tokens we kept are passed to its
+ *  reportError(), in input order; errors from lexing the far side of a
+ *  bad seam are dropped with the tokens.  A lexer that overrides
+ *  reportError() itself gets every error as it happens instead;
+ *  override displayRecognitionError() or emitErrorMessage().
+ *
+ *  Usage:
+ *
+ *     ParallelLexer lexers = new ParallelLexer(new ParallelLexer.LexerFactory() {
+ *         public Lexer newLexer(CharStream input) { return new MyLexer(input); }
+ *         public String getSplitAfterChars() { return MyLexer.SPLIT_AFTER_CHARS; }
+ *     });
+ *     CommonTokenStream tokens = lexers.tokenize(new ANTLRStringStream(text));
+ *
+ *  Java 6 has no fork-join pool so chunks run on an ExecutorService.
+ */
+public class ParallelLexer {
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 64*1024;
+
+	/** Makes a lexer for each chunk */
+	public interface LexerFactory {
+		public Lexer newLexer(CharStream input);
+
+		/** The chars input may be split after; usually the generated
+		 *  lexer's SPLIT_AFTER_CHARS.  Null means don't split.
+		 */
+		public String getSplitAfterChars();
+	}
+
+	/** Holds a chunk lexer's errors until we know which of its tokens
+	 *  we keep.  Records where the token being lexed started with each.
+	 */
+	protected static class DeferredErrors implements ErrorStrategy {
+		/** The lexer's own strategy, if it had one */
+		public ErrorStrategy delegate;
+		public List<RecognitionException> errors = new ArrayList<RecognitionException>();
+		public List<Integer> tokenStarts = new ArrayList<Integer>();
+
+		public DeferredErrors(ErrorStrategy delegate) {
+			this.delegate = delegate;
+		}
+
+		public Object recoverFromMismatchedToken(BaseRecognizer recognizer,
+												 IntStream input,
+												 int ttype,
+												 BitSet follow)
+			throws RecognitionException
+		{
+			if ( delegate!=null ) {
+				return delegate.recoverFromMismatchedToken(recognizer, input, ttype, follow);
+			}
+			throw new MismatchedTokenException(ttype, input); // lexers don't call this
+		}
+
+		public void reportError(BaseRecognizer recognizer, RecognitionException e) {
+			Lexer lexer = (Lexer)recognizer;
+			errors.add(e);
+			tokenStarts.add(lexer.state.tokenStartCharIndex);
+			// a reused exception would be overwritten by the next error
+			if ( e==lexer.mismatchedToken ) lexer.mismatchedToken = null;
+			if ( e==lexer.mismatchedRange ) lexer.mismatchedRange = null;
+		}
+
+		public void recover(BaseRecognizer recognizer,
+							IntStream input,
+							RecognitionException re)
+		{
+			if ( delegate!=null ) {
+				delegate.recover(recognizer, input, re);
+			}
+		}
+
+		/** Put back lexer's strategy and report the errors in tokens
+		 *  starting in from..to-1.
+		 */
+		public void replay(Lexer lexer, int from, int to) {
+			lexer.setErrorStrategy(delegate);
+			for (int i=0; i<errors.size(); i++) {
+				int start = tokenStarts.get(i);
+				if ( start>=from && start<to ) {
+					lexer.reportError(errors.get(i));
+				}
+			}
+		}
+	}
+
+	/** What we know about a chunk once it's lexed */
+	protected static class Chunk {
+		public int start;
+		public int end;
+		public Lexer lexer;
+		/** Tokens that start in start..end-1 */
+		public List<Token> tokens = new ArrayList<Token>();
+		/** First token lexed that starts at or past end */
+		public Token overflow;
+		public DeferredErrors errors;
+		/** The chars whose tokens merge() took from this chunk's lexer */
+		public int keptFrom;
+		public int keptTo;
+	}
+
+	protected LexerFactory factory;
+
+	/** If null, we make a pool for each tokenize() call */
+	protected ExecutorService executor;
+
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+	protected int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+	/** Overrides the factory's getSplitAfterChars() if non-null */
+	protected String splitAfterChars;
+
+	public ParallelLexer(LexerFactory factory) {
+		this.factory = factory;
+	}
+
+	public ParallelLexer(LexerFactory factory, ExecutorService executor, int numThreads) {
+		this.factory = factory;
+		this.executor = executor;
+		this.numThreads = numThreads;
+	}
+
+	public void setMinChunkSize(int minChunkSize) {
+		this.minChunkSize = minChunkSize;
+	}
+
+	public void setSplitAfterChars(String splitAfterChars) {
+		this.splitAfterChars = splitAfterChars;
+	}
+
+	/** Lex all of input and return a stream holding every token */
+	public CommonTokenStream tokenize(ANTLRStringStream input) {
+		String splits = splitAfterChars;
+		if ( splits==null ) {
+			splits = factory.getSplitAfterChars();
+		}
+		List<Chunk> chunks = split(input, splits);
+		ExecutorService pool = executor;
+		if ( pool==null && chunks.size()>1 ) {
+			pool = Executors.newFixedThreadPool(Math.min(numThreads, chunks.size()));
+		}
+		try {
+			lexChunks(input, chunks, pool);
+		}
+		finally {
+			if ( pool!=null && pool!=executor ) {
+				pool.shutdown();
+			}
+		}
+		final List<Token> merged = merge(chunks);
+		for (Chunk c : chunks) {
+			c.errors.replay(c.lexer, c.keptFrom, c.keptTo);
+		}
+		final String sourceName = input.getSourceName();
+		for (int i=0; i<merged.size(); i++) {
+			merged.get(i).setInputStream(input);
+		}
+		TokenSource replay = new TokenSource() {
+			int i = 0;
+			public Token nextToken() {
+				return merged.get(i<merged.size()-1 ? i++ : i);
+			}
+			public String getSourceName() {
+				return sourceName;
+			}
+		};
+		CommonTokenStream tokens = new CommonTokenStream(replay);
+		tokens.fill();
+		return tokens;
+	}
+
+	/** Cut input into roughly equal chunks, each ending just after a
+	 *  split char.
+	 */
+	protected List<Chunk> split(ANTLRStringStream input, String splits) {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		int n = input.size();
+		int chunkSize = Math.max(minChunkSize, n/Math.max(1,numThreads));
+		int start = 0;
+		if ( splits!=null && splits.length()>0 ) {
+			ANTLRStringStream scan = input.share();
+			scan.lineIndexed = true; // so seek() just jumps
+			while ( start+chunkSize<n ) {
+				int i = start+chunkSize-1;
+				scan.seek(i);
+				while ( scan.LA(1)!=CharStream.EOF && splits.indexOf(scan.LA(1))<0 ) {
+					scan.consume();
+				}
+				int end = scan.index()+1; // just past split char
+				if ( end>=n ) {
+					break;
+				}
+				chunks.add(newChunk(start, end));
+				start = end;
+			}
+		}
+		chunks.add(newChunk(start, n));
+		return chunks;
+	}
+
+	protected Chunk newChunk(int start, int end) {
+		Chunk c = new Chunk();
+		c.start = start;
+		c.end = end;
+		return c;
+	}
+
+	protected void lexChunks(ANTLRStringStream input, List<Chunk> chunks, ExecutorService pool) {
+		// find where each chunk starts in one pass over the input
+		ANTLRStringStream lines = input.share();
+		lines.lineIndexed = true;
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (final Chunk c : chunks) {
+			final ANTLRStringStream s = input.share();
+			s.p = c.start;
+			if ( !s.lineIndexed ) {
+				s.line = lines.getLine(c.start);
+				s.charPositionInLine = lines.getCharPositionInLine(c.start);
+			}
+			c.lexer = factory.newLexer(s);
+			c.errors = new DeferredErrors(c.lexer.getErrorStrategy());
+			c.lexer.setErrorStrategy(c.errors);
+			if ( pool==null ) {
+				lexChunk(c);
+				continue;
+			}
+			results.add(pool.submit(new Callable<Object>() {
+				public Object call() { lexChunk(c); return null; }
+			}));
+		}
+		for (Future<Object> f : results) {
+			try {
+				f.get();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while lexing", ie);
+			}
+			catch (ExecutionException ee) {
+				Throwable e = ee.getCause();
+				if ( e instanceof RuntimeException ) throw (RuntimeException)e;
+				if ( e instanceof Error ) throw (Error)e;
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	protected void lexChunk(Chunk c) {
+		while ( true ) {
+			Token t = c.lexer.nextToken();
+			if ( t.getType()==Token.EOF || start(t)>=c.end ) {
+				c.overflow = t;
+				return;
+			}
+			c.tokens.add(t);
+		}
+	}
+
+	/** Stitch chunk token lists together, re-lexing across bad seams */
+	protected List<Token> merge(List<Chunk> chunks) {
+		List<Token> merged = new ArrayList<Token>();
+		int c = 0;
+		int from = 0; // first token of chunk c to take
+		int at = 0; // char where chunk c's lexer takes over
+		while ( true ) {
+			Chunk chunk = chunks.get(c);
+			chunk.keptFrom = at;
+			List<Token> tokens = chunk.tokens;
+			for (int i=from; i<tokens.size(); i++) {
+				merged.add(tokens.get(i));
+			}
+			Token t = chunk.overflow;
+			if ( t.getType()==Token.EOF ) {
+				chunk.keptTo = Integer.MAX_VALUE;
+				merged.add(t);
+				return merged;
+			}
+			if ( c+1<chunks.size() && start(t)==chunks.get(c+1).start ) {
+				c++; // clean seam
+				from = 0;
+				at = chunk.keptTo = start(t);
+				continue;
+			}
+			// a token crossed the seam; resync with a later chunk
+			while ( true ) {
+				int k = chunkOf(chunks, start(t), c+1);
+				if ( k>=0 ) {
+					int j = tokenStartingAt(chunks.get(k), start(t));
+					if ( j>=0 ) {
+						c = k;
+						from = j;
+						at = chunk.keptTo = start(t);
+						break;
+					}
+				}
+				merged.add(t);
+				if ( t.getType()==Token.EOF ) {
+					chunk.keptTo = Integer.MAX_VALUE;
+					return merged;
+				}
+				t = chunk.lexer.nextToken();
+			}
+		}
+	}
+
+	/** Which chunk at or after first holds char index i? -1 if none */
+	protected int chunkOf(List<Chunk> chunks, int i, int first) {
+		for (int k=first; k<chunks.size(); k++) {
+			Chunk c = chunks.get(k);
+			if ( i>=c.start && i<c.end ) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/** Index in c.tokens of the token starting at char i or -1 */
+	protected int tokenStartingAt(Chunk c, int i) {
+		int lo = 0;
+		int hi = c.tokens.size()-1;
+		while ( lo<=hi ) {
+			int mid = (lo+hi)>>>1;
+			int s = start(c.tokens.get(mid));
+			if ( s==i ) return mid;
+			if ( s<i ) lo = mid+1;
+			else hi = mid-1;
+		}
+		return -1;
+	}
+
+	protected static int start(Token t) {
+		if ( t instanceof CommonToken ) {
+			return ((CommonToken)t).getStartIndex();
+		}
+		throw new IllegalArgumentException("ParallelLexer needs CommonTokens; got "+t.getClass().getName());
+	}
+}
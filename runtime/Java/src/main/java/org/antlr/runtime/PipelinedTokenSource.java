@@ -0,0 +1,321 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.locks.LockSupport;
+
+/** A TokenSource that runs another TokenSource, normally a lexer, on its
+ *  own thread so lexing overlaps with parsing.  Wrap the lexer and hand
+ *  this to the token stream as usual:
+ *
+ *     TokenSource src = new PipelinedTokenSource(lexer);
+ *     CommonTokenStream tokens = new CommonTokenStream(src);
+ *
+ *  The lexer thread hands tokens over in batches through a fixed-size
+ *  single-producer, single-consumer ring; neither side takes a lock.
+ *  When the ring is full the lexer thread parks until the parser takes
+ *  a batch, so memory use is bounded no matter how far ahead the lexer
+ *  could get.  When it is empty the parser thread parks until the lexer
+ *  queues one.
+ *
+ *  If nextToken() on the lexer thread throws, the parser sees the same
+ *  exception from nextToken() once it has consumed the tokens produced
+ *  before the failure.  Lexer errors that are reported and recovered
+ *  from as usual are reported on the lexer thread.
+ *
+ *  Before a CommonToken is handed over, the lexer thread fills in its
+ *  line info and, unless the input is an ANTLRStringStream without a
+ *  TokenTextCache, its text; so the parser thread never touches the
+ *  char stream or the cache while the lexer is still using them.  Other
+ *  Token classes are handed over as is and must not compute anything
+ *  from shared state.  Only one thread may call nextToken().
+ *
+ *  The lexer thread stops at EOF, on cancel(), or once this object is
+ *  garbage; it doesn't keep the lexer alive if the parser gives up
+ *  without calling cancel().
+ */
+public class PipelinedTokenSource implements TokenSource {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	/** How long a parked thread waits before checking whether the
+	 *  other side has gone away
+	 */
+	protected static final long POLL_NANOS = 100*1000*1000L;
+
+	protected final TokenSource source;
+
+	protected final int batchSize;
+
+	/** What the two threads share; the lexer thread refers to this
+	 *  object only weakly so it can tell when the parser is gone.
+	 */
+	protected final Pipe pipe;
+
+	protected Thread producer;
+
+	/** The batch the parser is reading and where it is in it */
+	protected Token[] batch;
+	protected int p;
+
+	/** Once we've seen EOF, keep returning it */
+	protected Token eof;
+
+	protected static class Pipe {
+		/** Full batches, the last one maybe short, in slots head..tail-1
+		 *  mod ring.length.  Only the lexer thread writes tail and only
+		 *  the parser thread writes head; the volatile write of tail
+		 *  publishes the batch and its tokens.
+		 */
+		protected final Token[][] ring;
+		protected volatile long head;
+		protected volatile long tail;
+
+		/** A thread parked waiting for the other, or null.  Each side
+		 *  sets its own before looking at the ring one last time and
+		 *  reads the other's after moving head or tail, so a wakeup is
+		 *  never lost.
+		 */
+		protected volatile Thread parkedProducer;
+		protected volatile Thread parkedConsumer;
+
+		/** Set by the lexer thread after queuing EOF or failing */
+		protected volatile boolean done;
+
+		/** What the lexer thread threw, if anything */
+		protected volatile Throwable error;
+
+		protected volatile boolean cancelled;
+
+		public Pipe(int capacity) {
+			ring = new Token[capacity][];
+		}
+
+		protected boolean isFull() {
+			return tail-head==ring.length;
+		}
+
+		protected boolean isEmpty() {
+			return tail==head;
+		}
+	}
+
+	/** The lexer thread's loop: lex a batch, wait for room, queue it */
+	protected static class Producer implements Runnable {
+		protected final TokenSource source;
+		protected final int batchSize;
+		protected final Pipe pipe;
+		protected final WeakReference<PipelinedTokenSource> consumer;
+
+		public Producer(PipelinedTokenSource consumer) {
+			this.source = consumer.source;
+			this.batchSize = consumer.batchSize;
+			this.pipe = consumer.pipe;
+			this.consumer = new WeakReference<PipelinedTokenSource>(consumer);
+		}
+
+		public void run() {
+			Token[] batch = new Token[batchSize];
+			int n = 0;
+			try {
+				boolean sawEOF = false;
+				while ( !sawEOF ) {
+					n = 0;
+					while ( n<batchSize ) {
+						Token t = source.nextToken();
+						materialize(t);
+						batch[n++] = t;
+						if ( t.getType()==Token.EOF ) {
+							sawEOF = true;
+							break;
+						}
+					}
+					if ( !put(batch, n) ) {
+						return;
+					}
+					batch = new Token[batchSize];
+					n = 0;
+				}
+			}
+			catch (Throwable e) {
+				// parser gets tokens lexed before the failure
+				if ( n==0 || put(batch, n) ) {
+					pipe.error = e;
+				}
+			}
+			finally {
+				pipe.done = true;
+				Thread c = pipe.parkedConsumer;
+				if ( c!=null ) LockSupport.unpark(c);
+			}
+		}
+
+		/** Wait for room and queue n tokens of batch; false if the parser
+		 *  has gone away.
+		 */
+		protected boolean put(Token[] batch, int n) {
+			if ( n<batch.length ) {
+				Token[] shorter = new Token[n];
+				System.arraycopy(batch, 0, shorter, 0, n);
+				batch = shorter;
+			}
+			while ( pipe.isFull() ) {
+				if ( pipe.cancelled || consumer.get()==null || Thread.interrupted() ) {
+					return false;
+				}
+				pipe.parkedProducer = Thread.currentThread();
+				if ( pipe.isFull() ) {
+					LockSupport.parkNanos(pipe, POLL_NANOS);
+				}
+				pipe.parkedProducer = null;
+			}
+			long t = pipe.tail;
+			pipe.ring[(int)(t%pipe.ring.length)] = batch;
+			pipe.tail = t+1;
+			Thread c = pipe.parkedConsumer;
+			if ( c!=null ) LockSupport.unpark(c);
+			return !pipe.cancelled;
+		}
+	}
+
+	public PipelinedTokenSource(TokenSource source) {
+		this(source, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	/** Capacity is how many tokens may wait for the parser, counted in
+	 *  whole batches, so it must hold at least one batch.
+	 */
+	public PipelinedTokenSource(TokenSource source, int capacity, int batchSize) {
+		if ( batchSize<1 || capacity<batchSize ) {
+			throw new IllegalArgumentException("capacity "+capacity+" must be >= batch size "+batchSize+" >= 1");
+		}
+		this.source = source;
+		this.batchSize = batchSize;
+		this.pipe = new Pipe(capacity/batchSize);
+	}
+
+	/** Fill in everything the parser thread would otherwise compute from
+	 *  the char stream or the text cache.  Strings from an
+	 *  ANTLRStringStream are still cut out lazily, since its chars never
+	 *  change.
+	 */
+	protected static void materialize(Token t) {
+		if ( !(t instanceof CommonToken) ) {
+			return;
+		}
+		CommonToken ct = (CommonToken)t;
+		if ( ct.line<0 ) {
+			int line = ct.getLine();
+			int pos = ct.getCharPositionInLine();
+			ct.setLine(line);
+			ct.setCharPositionInLine(pos);
+		}
+		if ( ct.text==null && ct.input!=null &&
+			 (ct.textCache!=null || !(ct.input instanceof ANTLRStringStream)) )
+		{
+			ct.setText(ct.getText());
+		}
+	}
+
+	/** Start lexing ahead.  nextToken() calls this if you haven't. */
+	public synchronized void start() {
+		if ( producer!=null ) {
+			return;
+		}
+		producer = new Thread(new Producer(this), "antlr-lexer-"+source.getSourceName());
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/** Stop the lexer thread early; e.g., when the parser bails out. */
+	public void cancel() {
+		pipe.cancelled = true;
+	}
+
+	public Token nextToken() {
+		if ( eof!=null ) {
+			return eof;
+		}
+		if ( producer==null ) {
+			start();
+		}
+		if ( batch==null || p==batch.length ) {
+			batch = takeBatch();
+			p = 0;
+		}
+		Token t = batch[p];
+		batch[p++] = null;
+		if ( t.getType()==Token.EOF ) {
+			eof = t;
+		}
+		return t;
+	}
+
+	/** Wait until the lexer thread queues a batch and take it */
+	protected Token[] takeBatch() {
+		while ( true ) {
+			if ( !pipe.isEmpty() ) {
+				long h = pipe.head;
+				int slot = (int)(h%pipe.ring.length);
+				Token[] b = pipe.ring[slot];
+				pipe.ring[slot] = null;
+				pipe.head = h+1;
+				Thread w = pipe.parkedProducer;
+				if ( w!=null ) LockSupport.unpark(w);
+				return b;
+			}
+			if ( pipe.done ) {
+				if ( !pipe.isEmpty() ) {
+					continue; // queued just before finishing
+				}
+				Throwable e = pipe.error;
+				if ( e instanceof RuntimeException ) throw (RuntimeException)e;
+				if ( e instanceof Error ) throw (Error)e;
+				throw new IllegalStateException("lexer thread stopped without EOF", e);
+			}
+			pipe.parkedConsumer = Thread.currentThread();
+			if ( pipe.isEmpty() && !pipe.done ) {
+				LockSupport.parkNanos(pipe, POLL_NANOS);
+			}
+			pipe.parkedConsumer = null;
+			if ( Thread.interrupted() ) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted waiting for tokens");
+			}
+		}
+	}
+
+	public TokenSource getTokenSource() {
+		return source;
+	}
+
+	public String getSourceName() {
+		return source.getSourceName();
+	}
+}
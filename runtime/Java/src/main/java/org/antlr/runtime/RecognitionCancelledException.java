@@ -0,0 +1,60 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** Thrown by BailErrorStrategy to abandon recognition at the first
+ *  syntax error.  It is unchecked so generated rules, which catch
+ *  RecognitionException to recover, let it through.  The message is
+ *  only built, by the recognizer as reportError() would have, when
+ *  getMessage() is called.
+ */
+public class RecognitionCancelledException extends RuntimeException {
+	/** The recognizer that gave up; it formats the message */
+	public BaseRecognizer recognizer;
+
+	/** What went wrong */
+	public RecognitionException error;
+
+	protected String message;
+
+	public RecognitionCancelledException(BaseRecognizer recognizer,
+										 RecognitionException error)
+	{
+		super(null, error);
+		this.recognizer = recognizer;
+		this.error = error;
+	}
+
+	public String getMessage() {
+		if ( message==null ) {
+			message = recognizer.getErrorHeader(error)+" "+
+					  recognizer.getErrorMessage(error, recognizer.getTokenNames());
+		}
+		return message;
+	}
+}
@@ -29,6 +29,8 @@ package org.antlr.runtime;
 
 import org.antlr.runtime.tree.*;
 
+import java.util.List;
+
 /** The root of the ANTLR exception hierarchy.
  *
  *  To avoid English-only error messages and to generally make things
@@ -60,6 +62,17 @@ import org.antlr.runtime.tree.*;
  *  figure out a fancy report.
  */
 public class RecognitionException extends Exception {
+	/** Set to false to stop recognition exceptions created from then on,
+	 *  by any recognizer, from capturing a Java stack trace.  Generated
+	 *  code creates and discards lots of these during recovery, where
+	 *  walking the stack costs far more than the rest of the exception.
+	 *  Lexers also reuse one instance per mismatch type.  The rules that
+	 *  were active are still available via ruleInvocationStack if the
+	 *  grammar was generated with option ruleStack=true; otherwise these
+	 *  exceptions have no rule trace.
+	 */
+	public static boolean captureStackTraces = true;
+
 	/** What input stream did the error occur in? */
 	public transient IntStream input;
 
@@ -95,12 +108,33 @@ public class RecognitionException extends Exception {
 	 */
 	public boolean approximateLineInfo;
 
+	/** The rules active when the error was reported, outermost first;
+	 *  BaseRecognizer.reportError() records it from the explicit rule
+	 *  stack (option ruleStack=true) for exceptions without a stack
+	 *  trace.  Null otherwise.
+	 */
+	public List ruleInvocationStack;
+
 	/** Used for remote debugger deserialization */
 	public RecognitionException() {
 	}
 
 	public RecognitionException(IntStream input) {
+		locate(input);
+	}
+
+	/** Record where in input the error is, forgetting any previous
+	 *  location so a recognizer can throw this instance again.
+	 */
+	protected void locate(IntStream input) {
 		this.input = input;
+		this.token = null;
+		this.node = null;
+		this.c = 0;
+		this.line = 0;
+		this.charPositionInLine = 0;
+		this.approximateLineInfo = false;
+		this.ruleInvocationStack = null;
 		this.index = input.index();
 		if ( input instanceof TokenStream ) {
 			this.token = ((TokenStream)input).LT(1);
@@ -163,6 +197,11 @@ public class RecognitionException extends Exception {
 		}
 	}
 
+	public Throwable fillInStackTrace() {
+		if ( !captureStackTraces ) return this;
+		return super.fillInStackTrace();
+	}
+
 	/** Return the token type or char of the unexpected input element */
 	public int getUnexpectedType() {
 		if ( input instanceof TokenStream ) {
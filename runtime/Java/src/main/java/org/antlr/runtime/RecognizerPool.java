@@ -0,0 +1,256 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A pool of lexer, token stream and parser triples for servers that
+ *  parse many small inputs.  Building a recognizer allocates its DFAs,
+ *  follow stack and memo arrays, and a lexer's DFAs unpack their tables
+ *  on first use; leasing a triple that has already run skips all that.
+ *
+ *  Always give a lease back, even if parsing threw:
+ *
+ *  	RecognizerPool.Lease<TLexer,TParser> lease = pool.lease(input);
+ *  	try {
+ *  		lease.parser.prog();
+ *  	}
+ *  	finally {
+ *  		lease.release();
+ *  	}
+ *
+ *  Returning a triple resets all three and unbinds them from the input
+ *  so the pool holds on to no request data.  A triple whose state is
+ *  not fully reset afterwards (say a subclass's reset() forgot to call
+ *  super) is dropped rather than handed out again.  Settings in the
+ *  shared state such as the error strategy and backtracking limits are
+ *  configuration and survive; set them in the Factory.
+ *
+ *  Leasing and releasing are thread-safe; a lease itself belongs to one
+ *  thread at a time.
+ */
+public class RecognizerPool<L extends Lexer, P extends Parser> {
+	/** Builds the triples; called when a lease finds none idle */
+	public static abstract class Factory<L extends Lexer, P extends Parser> {
+		/** Return a new lexer; the pool binds it to the input */
+		public abstract L newLexer();
+
+		public CommonTokenStream newTokenStream(L lexer) {
+			return new CommonTokenStream(lexer);
+		}
+
+		public abstract P newParser(CommonTokenStream tokens);
+	}
+
+	public static class Lease<L extends Lexer, P extends Parser> {
+		public final L lexer;
+		public final CommonTokenStream tokens;
+		public final P parser;
+
+		protected final RecognizerPool<L,P> pool;
+
+		/** The channel the factory's token stream reads; rebinding the
+		 *  stream resets it to the default, so we put it back.
+		 */
+		protected final int channel;
+
+		/** Guarded by the pool's lock */
+		protected boolean leased;
+
+		protected Lease(RecognizerPool<L,P> pool,
+						L lexer,
+						CommonTokenStream tokens,
+						P parser)
+		{
+			this.pool = pool;
+			this.lexer = lexer;
+			this.tokens = tokens;
+			this.parser = parser;
+			this.channel = tokens.channel;
+		}
+
+		/** Give this triple back to its pool */
+		public void release() {
+			pool.release(this);
+		}
+	}
+
+	public static final int DEFAULT_MAX_IDLE = 16;
+
+	protected final Factory<L,P> factory;
+
+	/** Keep at most this many triples around between leases */
+	protected final int maxIdle;
+
+	/** Idle triples; we lease the most recently used first since its
+	 *  data is the most likely to still be in cache.
+	 */
+	protected final List<Lease<L,P>> idle = new ArrayList<Lease<L,P>>();
+
+	protected long leases;
+	protected long created;
+	protected long discarded;
+	protected int inUse;
+	protected int peakInUse;
+
+	public RecognizerPool(Factory<L,P> factory) {
+		this(factory, DEFAULT_MAX_IDLE);
+	}
+
+	public RecognizerPool(Factory<L,P> factory, int maxIdle) {
+		this.factory = factory;
+		this.maxIdle = maxIdle;
+	}
+
+	/** Return a triple reading from input, ready to parse */
+	public Lease<L,P> lease(CharStream input) {
+		Lease<L,P> lease = null;
+		synchronized (this) {
+			leases++;
+			int n = idle.size();
+			if ( n>0 ) {
+				lease = idle.remove(n-1);
+			}
+			else {
+				created++;
+			}
+			inUse++;
+			if ( inUse>peakInUse ) peakInUse = inUse;
+			if ( lease!=null ) lease.leased = true;
+		}
+		if ( lease==null ) {
+			try {
+				lease = newLease();
+			}
+			catch (RuntimeException e) {
+				synchronized (this) { inUse--; }
+				throw e;
+			}
+			synchronized (this) { lease.leased = true; }
+		}
+		lease.lexer.setCharStream(input);
+		lease.tokens.setTokenSource(lease.lexer);
+		lease.tokens.channel = lease.channel;
+		return lease;
+	}
+
+	protected Lease<L,P> newLease() {
+		L lexer = factory.newLexer();
+		CommonTokenStream tokens = factory.newTokenStream(lexer);
+		P parser = factory.newParser(tokens);
+		return new Lease<L,P>(this, lexer, tokens, parser);
+	}
+
+	/** Reset lease's triple and make it available again.  Safe to call
+	 *  after the parse threw anything; returning a lease twice is an
+	 *  error.
+	 */
+	public void release(Lease<L,P> lease) {
+		synchronized (this) {
+			if ( lease.pool!=this || !lease.leased ) {
+				throw new IllegalStateException("lease is not out from this pool");
+			}
+			lease.leased = false;
+		}
+		boolean clean;
+		try {
+			lease.lexer.setCharStream(null);
+			lease.tokens.setTokenSource(lease.lexer);
+			lease.tokens.channel = lease.channel;
+			lease.parser.setTokenStream(lease.tokens);
+			clean = isReset(lease);
+		}
+		catch (RuntimeException e) {
+			clean = false; // don't trust it
+		}
+		synchronized (this) {
+			inUse--;
+			if ( clean && idle.size()<maxIdle ) {
+				idle.add(lease);
+			}
+			else {
+				discarded++;
+			}
+		}
+	}
+
+	/** Is the whole triple back in the state the factory built it in? */
+	protected boolean isReset(Lease<L,P> lease) {
+		return isReset(lease.lexer) && isReset(lease.parser) &&
+			   lease.tokens.channel==lease.channel && lease.tokens.size()==0;
+	}
+
+	/** Did reset() put the recognizer back in its initial state? */
+	protected boolean isReset(BaseRecognizer recognizer) {
+		RecognizerSharedState state = recognizer.state;
+		if ( state==null ) return true;
+		if ( state._fsp!=-1 || state._rsp!=-1 || state.backtracking!=0 ||
+			 state.failed || state.errorRecovery || state.syntaxErrors!=0 ||
+			 state.lastErrorIndex!=-1 || state.speculativeTokens!=0 ||
+			 state.speculationStart!=-1 || state.abortingSpeculation ||
+			 state.backtrackingDeadline!=0 || state.token!=null ||
+			 state.text!=null )
+		{
+			return false;
+		}
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			if ( state.ruleMemoTables[i]!=null ) return false;
+		}
+		return true;
+	}
+
+	/** How many leases were handed out in total */
+	public synchronized long getLeaseCount() { return leases; }
+
+	/** How many triples the factory had to build */
+	public synchronized long getCreatedCount() { return created; }
+
+	/** How many returned triples were dropped, either because the pool
+	 *  was full or because they did not reset cleanly.
+	 */
+	public synchronized long getDiscardedCount() { return discarded; }
+
+	public synchronized int getInUse() { return inUse; }
+
+	/** The most triples ever leased at once */
+	public synchronized int getPeakInUse() { return peakInUse; }
+
+	public synchronized int getIdleCount() { return idle.size(); }
+
+	/** Fraction of leases served by an idle triple */
+	public synchronized double getHitRate() {
+		return leases==0 ? 0.0 : (double)(leases-created)/leases;
+	}
+
+	/** Fraction of the triples this pool holds that are leased out */
+	public synchronized double getUtilization() {
+		int total = inUse + idle.size();
+		return total==0 ? 0.0 : (double)inUse/total;
+	}
+}
@@ -26,6 +26,8 @@
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */package org.antlr.runtime;
 
+import org.antlr.runtime.misc.MemoTable;
+
 import java.util.Map;
 
 /** The set of fields needed by an abstract recognizer to recognize input
@@ -43,6 +45,13 @@ public class RecognizerSharedState {
 	public BitSet[] following = new BitSet[BaseRecognizer.INITIAL_FOLLOW_STACK_SIZE];
 	public int _fsp = -1;
 
+	/** Indexes of the rules being executed, outermost first, if the
+	 *  grammar was generated with option ruleStack=true; null otherwise.
+	 *  Grows upwards like following.
+	 */
+	public int[] ruleStack;
+	public int _rsp = -1;
+
 	/** This is true when we see an error and before having successfully
 	 *  matched a token.  Prevents generation of more than one error message
 	 *  per error.
@@ -70,15 +79,69 @@ public class RecognizerSharedState {
 	 */
 	public int backtracking = 0;
 
-	/** An array[size num rules] of Map<Integer,Integer> that tracks
-	 *  the stop token index for each rule.  ruleMemo[ruleIndex] is
+	/** An array[size num rules] of MemoTable that tracks
+	 *  the stop token index for each rule.  ruleMemoTables[ruleIndex] is
 	 *  the memoization table for ruleIndex.  For key ruleStartIndex, you
 	 *  get back the stop token for associated rule or MEMO_RULE_FAILED.
 	 *
 	 *  This is only used if rule memoization is on (which it is by default).
 	 */
+	public MemoTable[] ruleMemoTables;
+
+	/** Parsers generated before MemoTable set this to
+	 *  new HashMap[numRules+1] instead of setting ruleMemoTables.  It is
+	 *  kept so they still link; only its length is used, to size
+	 *  ruleMemoTables, and the maps stay empty.
+	 */
 	public Map[] ruleMemo;
 
+	/** If >0, no rule's memoization table holds more than this many
+	 *  entries; the ones for the earliest input positions are evicted
+	 *  first.  Set before parsing to bound memory on huge inputs.
+	 */
+	public int ruleMemoMaxSize = 0;
+
+	/** Bumped by reset() so every recognizer sharing this state drops
+	 *  the syntactic predicate outcomes it cached.
+	 */
+	public int memoGeneration = 0;
+
+	/** Limits on speculation for one parse, checked as each syntactic
+	 *  predicate starts and, while backtracking, as each rule starts and
+	 *  as cyclic DFAs predict.
+	 *  Going over one throws BacktrackingBudgetExceededException; 0 means
+	 *  no limit.  The clock for maxBacktrackingMillis starts at the first
+	 *  syntactic predicate after reset().
+	 */
+	public int maxBacktrackingDepth = 0;
+	public long maxSpeculativeTokens = 0;
+	public long maxBacktrackingMillis = 0;
+
+	/** How many symbols syntactic predicates have consumed (and rewound)
+	 *  so far, counting once per predicate evaluation.
+	 */
+	public long speculativeTokens = 0;
+
+	/** Where the outermost syntactic predicate under way started; -1 if
+	 *  none.  The symbols since then count toward maxSpeculativeTokens
+	 *  before the predicate returns.
+	 */
+	public int speculationStart = -1;
+
+	/** Set while a BacktrackingBudgetExceededException unwinds a
+	 *  speculation so the rules it cuts short don't memoize bogus
+	 *  results.
+	 */
+	public boolean abortingSpeculation = false;
+
+	/** When maxBacktrackingMillis runs out; 0 until the clock starts */
+	public long backtrackingDeadline = 0;
+
+	/** If non-null, decides how to handle syntax errors instead of the
+	 *  recognizer's built-in recovery.
+	 */
+	public ErrorStrategy errorStrategy;
+
 
 	// LEXER FIELDS (must be in same state object to avoid casting
 	//               constantly in generated code and Lexer object) :(
@@ -125,15 +188,31 @@ public class RecognizerSharedState {
         }
         System.arraycopy(state.following, 0, this.following, 0, state.following.length);
         this._fsp = state._fsp;
+        if ( state.ruleStack!=null ) {
+            this.ruleStack = new int[state.ruleStack.length];
+            System.arraycopy(state.ruleStack, 0, this.ruleStack, 0, state._rsp+1);
+        }
+        this._rsp = state._rsp;
         this.errorRecovery = state.errorRecovery;
         this.lastErrorIndex = state.lastErrorIndex;
         this.failed = state.failed;
         this.syntaxErrors = state.syntaxErrors;
         this.backtracking = state.backtracking;
-        if ( state.ruleMemo!=null ) {
-            this.ruleMemo = new Map[state.ruleMemo.length];
-            System.arraycopy(state.ruleMemo, 0, this.ruleMemo, 0, state.ruleMemo.length);
+        if ( state.ruleMemoTables!=null ) {
+            this.ruleMemoTables = new MemoTable[state.ruleMemoTables.length];
+            System.arraycopy(state.ruleMemoTables, 0, this.ruleMemoTables, 0, state.ruleMemoTables.length);
         }
+        this.ruleMemo = state.ruleMemo;
+        this.ruleMemoMaxSize = state.ruleMemoMaxSize;
+        this.memoGeneration = state.memoGeneration;
+        this.maxBacktrackingDepth = state.maxBacktrackingDepth;
+        this.maxSpeculativeTokens = state.maxSpeculativeTokens;
+        this.maxBacktrackingMillis = state.maxBacktrackingMillis;
+        this.speculativeTokens = state.speculativeTokens;
+        this.speculationStart = state.speculationStart;
+        this.abortingSpeculation = state.abortingSpeculation;
+        this.backtrackingDeadline = state.backtrackingDeadline;
+        this.errorStrategy = state.errorStrategy;
         this.token = state.token;
         this.tokenStartCharIndex = state.tokenStartCharIndex;
         this.tokenStartCharPositionInLine = state.tokenStartCharPositionInLine;
@@ -0,0 +1,286 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Save the tokens of a BufferedTokenStream to a compact binary file so
+ *  the same immutable input need not be lexed again.  Load it back with
+ *  MappedTokenStream, which maps the file rather than running a lexer.
+ *
+ *  Layout (big-endian ints unless noted):
+ *
+ *     header:   MAGIC, VERSION, flags, token count, source length,
+ *               source checksum (long), grammar checksum (long)
+ *     columns:  type[count], channel[count], start[count], stop[count],
+ *               line[count], charPositionInLine[count]
+ *     texts:    number of texts m, token index[m] (ascending),
+ *               char offset[m+1], then the chars as 16-bit units
+ *
+ *  Only tokens whose text does not come straight from the input (e.g.,
+ *  set with setText() in an action) go in the text table unless you ask
+ *  for every text; then the snapshot loads without the source at all.
+ *
+ *  The checksums guard against stale snapshots: MappedTokenStream
+ *  refuses a snapshot taken from different input or with a different
+ *  grammar.
+ */
+public class TokenSnapshot {
+	public static final int MAGIC = 0x414E5453; // "ANTS"
+	public static final int VERSION = 1;
+
+	/** Set if every token's text is in the text table */
+	public static final int ALL_TEXT = 1;
+
+	public static final int HEADER_SIZE = 5*4 + 2*8;
+
+	/** How many chars checksum() reads at once */
+	public static final int CHECKSUM_WINDOW = 4096;
+
+	/** Column order after the header */
+	public static final int TYPE = 0;
+	public static final int CHANNEL = 1;
+	public static final int START = 2;
+	public static final int STOP = 3;
+	public static final int LINE = 4;
+	public static final int POS = 5;
+	public static final int NUM_COLUMNS = 6;
+
+	/** Write all tokens from the stream (fetching up to EOF) to file.
+	 *  Only text that differs from the input is saved.
+	 */
+	public static void write(BufferedTokenStream tokens, File file)
+		throws IOException
+	{
+		TokenSource src = tokens.getTokenSource();
+		long grammarChecksum = src instanceof Lexer ? grammarChecksum((Lexer)src) : 0;
+		write(tokens, file, grammarChecksum, false);
+	}
+
+	public static void write(BufferedTokenStream tokens, File file,
+							 long grammarChecksum, boolean allText)
+		throws IOException
+	{
+		tokens.fill();
+		List<? extends Token> list = tokens.getTokens();
+		int count = list.size();
+		CharStream input = sourceOf(tokens);
+		if ( input==null ) allText = true; // nowhere else to get text from
+
+		int[] start = new int[count];
+		int[] stop = new int[count];
+		for (int i=0; i<count; i++) {
+			Token t = list.get(i);
+			start[i] = startOf(t);
+			stop[i] = stopOf(t);
+		}
+
+		DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(allText ? ALL_TEXT : 0);
+			out.writeInt(count);
+			out.writeInt(input!=null ? input.size() : 0);
+			out.writeLong(input!=null ? checksum(input) : 0);
+			out.writeLong(grammarChecksum);
+
+			for (int i=0; i<count; i++) out.writeInt(list.get(i).getType());
+			for (int i=0; i<count; i++) out.writeInt(list.get(i).getChannel());
+			for (int i=0; i<count; i++) out.writeInt(start[i]);
+			for (int i=0; i<count; i++) out.writeInt(stop[i]);
+			for (int i=0; i<count; i++) out.writeInt(list.get(i).getLine());
+			for (int i=0; i<count; i++) out.writeInt(list.get(i).getCharPositionInLine());
+
+			// which texts do we need?
+			int[] which = new int[count];
+			String[] texts = new String[count];
+			int m = 0;
+			for (int i=0; i<count; i++) {
+				Token t = list.get(i);
+				if ( allText || !textFromInput(t, input, start[i], stop[i]) ) {
+					String text = t.getText();
+					if ( text==null ) continue; // EOF etc...; input supplies it
+					which[m] = i;
+					texts[m] = text;
+					m++;
+				}
+			}
+			out.writeInt(m);
+			for (int k=0; k<m; k++) out.writeInt(which[k]);
+			int offset = 0;
+			for (int k=0; k<m; k++) {
+				out.writeInt(offset);
+				offset += texts[k].length();
+			}
+			out.writeInt(offset);
+			for (int k=0; k<m; k++) out.writeChars(texts[k]);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/** Is the snapshot in file for this input and grammar?  Cheaper than
+	 *  catching the IOException from MappedTokenStream.
+	 */
+	public static boolean isCurrent(File file, CharStream input, long grammarChecksum) {
+		if ( !file.exists() || file.length()<HEADER_SIZE ) return false;
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				FileChannel channel = f.getChannel();
+				while ( header.hasRemaining() && channel.read(header)>=0 ) {;}
+				header.flip();
+				return staleReason(header, input, grammarChecksum, true)==null;
+			}
+			finally {
+				f.close();
+			}
+		}
+		catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	/** Return why the snapshot with this header can't be used with
+	 *  input and grammar or null if it can.  Null input means don't
+	 *  check the source, which requires a snapshot with all texts.  If
+	 *  checkInput is false, only the size of input is checked.
+	 */
+	static String staleReason(ByteBuffer header, CharStream input, long grammarChecksum,
+							  boolean checkInput)
+	{
+		if ( header.getInt(0)!=MAGIC ) return "not a token snapshot";
+		if ( header.getInt(4)!=VERSION ) {
+			return "token snapshot version "+header.getInt(4)+" not "+VERSION;
+		}
+		if ( header.getLong(28)!=grammarChecksum ) {
+			return "token snapshot is for a different grammar";
+		}
+		if ( input==null ) {
+			if ( (header.getInt(8) & ALL_TEXT)==0 ) {
+				return "token snapshot has no text; need the input";
+			}
+			return null;
+		}
+		if ( header.getInt(16)!=input.size() ||
+			 (checkInput && header.getLong(20)!=checksum(input)) )
+		{
+			return "token snapshot is for different input";
+		}
+		return null;
+	}
+
+	/** CRC32 of the chars in input, read a window at a time so a stream
+	 *  without views never copies more than CHECKSUM_WINDOW chars.
+	 */
+	public static long checksum(CharStream input) {
+		CRC32 crc = new CRC32();
+		int n = input.size();
+		byte[] buf = new byte[2*CHECKSUM_WINDOW];
+		for (int start=0; start<n; start+=CHECKSUM_WINDOW) {
+			int len = Math.min(CHECKSUM_WINDOW, n-start);
+			CharSequence chars = CharArrayView.substringView(input, start, start+len-1);
+			int b = 0;
+			for (int i=0; i<len; i++) {
+				char c = chars.charAt(i);
+				buf[b++] = (byte)(c>>>8);
+				buf[b++] = (byte)c;
+			}
+			crc.update(buf, 0, b);
+		}
+		return crc.getValue();
+	}
+
+	/** The lexer's generated grammar checksum if it has one; else a
+	 *  hash of its class and grammar file name, which will not notice
+	 *  edits to the grammar.
+	 */
+	public static long grammarChecksum(Lexer lexer) {
+		long sum = lexer.getGrammarChecksum();
+		if ( sum!=0 ) return sum;
+		CRC32 crc = new CRC32();
+		String id = lexer.getClass().getName()+"/"+lexer.getGrammarFileName();
+		for (int i=0; i<id.length(); i++) crc.update(id.charAt(i));
+		return crc.getValue();
+	}
+
+	protected static CharStream sourceOf(BufferedTokenStream tokens) {
+		TokenSource src = tokens.getTokenSource();
+		CharStream input = null;
+		if ( src instanceof Lexer ) input = ((Lexer)src).getCharStream();
+		else if ( tokens.size()>0 ) input = tokens.get(0).getInputStream();
+		// a windowed stream has dropped the early chars; save all texts instead
+		if ( input instanceof WindowedCharStream ) return null;
+		return input;
+	}
+
+	protected static int startOf(Token t) {
+		if ( t instanceof CommonToken ) return ((CommonToken)t).getStartIndex();
+		if ( t instanceof ColumnarTokenList.TokenView ) {
+			return ((ColumnarTokenList.TokenView)t).getStartIndex();
+		}
+		if ( t instanceof MappedTokenStream.SnapshotSource.TokenView ) {
+			return ((MappedTokenStream.SnapshotSource.TokenView)t).getStartIndex();
+		}
+		return -1;
+	}
+
+	protected static int stopOf(Token t) {
+		if ( t instanceof CommonToken ) return ((CommonToken)t).getStopIndex();
+		if ( t instanceof ColumnarTokenList.TokenView ) {
+			return ((ColumnarTokenList.TokenView)t).getStopIndex();
+		}
+		if ( t instanceof MappedTokenStream.SnapshotSource.TokenView ) {
+			return ((MappedTokenStream.SnapshotSource.TokenView)t).getStopIndex();
+		}
+		return -1;
+	}
+
+	/** Can the reloaded token get its text from the input? */
+	protected static boolean textFromInput(Token t, CharStream input, int start, int stop) {
+		if ( input==null || start<0 ) return false;
+		if ( t.getType()==Token.EOF ) return true;
+		if ( t instanceof CommonToken ) return ((CommonToken)t).text==null;
+		if ( stop>=input.size() ) return false;
+		String text = t.getText();
+		return text!=null && text.contentEquals(CharArrayView.substringView(input, start, stop));
+	}
+}
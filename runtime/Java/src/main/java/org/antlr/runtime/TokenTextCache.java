@@ -0,0 +1,167 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** A bounded cache of token text keyed by token type and the chars of
+ *  the token.  Looking up a char range hashes and compares the chars in
+ *  place so a hit allocates nothing; only a miss builds the String.
+ *  Identifiers and keywords recur constantly in big inputs so sharing
+ *  one String per distinct text collapses the duplicates that would
+ *  otherwise be held by every token.
+ *
+ *  The table is direct-mapped with one extra probe; a miss overwrites
+ *  the older entry so the cache never grows past its capacity.  Text
+ *  longer than maxTextLength isn't cached as long tokens (comments,
+ *  strings) rarely repeat.
+ *
+ *  Sharing a cache across threads is safe in that entries are immutable
+ *  and a lost race just costs a miss, but the hit and miss counters
+ *  are approximate then.
+ *
+ *  Use it via CommonTokenFactory:
+ *
+ *     lexer.setTokenFactory(new CommonTokenFactory(false, new TokenTextCache()));
+ */
+public class TokenTextCache {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_MAX_TEXT_LENGTH = 64;
+
+	protected static class Entry {
+		public final int type;
+		public final int hash;
+		public final String text;
+		public Entry(int type, int hash, String text) {
+			this.type = type;
+			this.hash = hash;
+			this.text = text;
+		}
+	}
+
+	protected Entry[] entries;
+
+	/** entries.length-1; capacity is a power of 2 */
+	protected int mask;
+
+	protected int maxTextLength;
+
+	protected int hits;
+	protected int misses;
+
+	public TokenTextCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_TEXT_LENGTH);
+	}
+
+	/** Capacity is rounded up to a power of 2 */
+	public TokenTextCache(int capacity, int maxTextLength) {
+		int n = 2;
+		while ( n<capacity ) {
+			n <<= 1;
+		}
+		entries = new Entry[n];
+		mask = n-1;
+		this.maxTextLength = maxTextLength;
+	}
+
+	/** Return the text of chars start..stop in input, shared with any
+	 *  earlier token of the same type and text.
+	 */
+	public String getText(int type, CharStream input, int start, int stop) {
+		int len = stop-start+1;
+		if ( len<=0 || len>maxTextLength ) {
+			return input.substring(start, stop);
+		}
+		CharSequence chars = CharArrayView.substringView(input, start, stop);
+		int h = hash(type, chars);
+		int i = h & mask;
+		Entry e = entries[i];
+		if ( e!=null && matches(e, type, h, chars) ) {
+			hits++;
+			return e.text;
+		}
+		int j = (i+1) & mask;
+		Entry e2 = entries[j];
+		if ( e2!=null && matches(e2, type, h, chars) ) {
+			hits++;
+			return e2.text;
+		}
+		misses++;
+		String text = chars.toString();
+		Entry added = new Entry(type, h, text);
+		if ( e==null ) {
+			entries[i] = added;
+		}
+		else if ( e2==null ) {
+			entries[j] = added;
+		}
+		else { // evict probe slot; older home entry moves there
+			entries[j] = e;
+			entries[i] = added;
+		}
+		return text;
+	}
+
+	protected int hash(int type, CharSequence chars) {
+		int h = type;
+		for (int i=0; i<chars.length(); i++) {
+			h = 31*h + chars.charAt(i);
+		}
+		return h ^ (h>>>16);
+	}
+
+	protected boolean matches(Entry e, int type, int hash, CharSequence chars) {
+		if ( e.hash!=hash || e.type!=type || e.text.length()!=chars.length() ) {
+			return false;
+		}
+		for (int i=0; i<chars.length(); i++) {
+			if ( e.text.charAt(i)!=chars.charAt(i) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		for (int i=0; i<entries.length; i++) {
+			entries[i] = null;
+		}
+		hits = 0;
+		misses = 0;
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+}
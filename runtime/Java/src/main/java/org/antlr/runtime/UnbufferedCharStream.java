@@ -0,0 +1,365 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A CharStream that pulls chars from a Reader on demand and keeps only
+ *  a window of them rather than vacuuming all input like
+ *  ANTLRReaderStream.  Use this to lex sockets, pipes, and other input
+ *  that may never end.  Lexing can start as soon as the first chars
+ *  arrive.
+ *
+ *  The window starts at the oldest position that's still pinned.
+ *  Outstanding mark()s pin their positions, and Lexer.nextToken() pins
+ *  the start of every token via pinTokenStart(), so the text of the
+ *  current token (and anything a backtracking lexer might rewind to) is
+ *  always available.
+ *  Once nothing pins a region, its chars are discarded.  seek(),
+ *  rewind() and substring() to discarded chars throw
+ *  UnsupportedOperationException.
+ *
+ *  Since tokens normally compute their text lazily from the char stream,
+ *  pair this stream with a copying token factory so tokens take their
+ *  text before it slides out of the window:
+ *
+ *     lexer.setTokenFactory(new CommonTokenFactory(true));
+ *
+ *  Line and column tracking is the same as ANTLRStringStream.
+ */
+public class UnbufferedCharStream implements WindowedCharStream {
+	public static final int READ_BUFFER_SIZE = 1024;
+	public static final int INITIAL_BUFFER_SIZE = 1024;
+
+	protected Reader input;
+
+	/** The moving window of chars; data[0] is char bufferStartIndex */
+	protected char[] data;
+
+	/** How many chars of data are valid */
+	protected int n;
+
+	/** 0..n index into data of next char; LA(1) is data[p] */
+	protected int p = 0;
+
+	/** Absolute char index of data[0] */
+	protected int bufferStartIndex = 0;
+
+	/** The char just before data[0], or EOF at start of input; this
+	 *  lets LA(-1) work even after the window slides.
+	 */
+	protected int charBeforeWindow = CharStream.EOF;
+
+	/** Set once the reader has returned -1 */
+	protected boolean eof = false;
+
+	/** How many chars to ask the reader for at once */
+	protected int readChunkSize;
+
+	/** line number 1..n within the input */
+	protected int line = 1;
+
+	/** The index of the character relative to the beginning of the line 0..n-1 */
+	protected int charPositionInLine = 0;
+
+	/** tracks how deep mark() calls are nested */
+	protected int markDepth = 0;
+
+	/** A list of CharStreamState objects that tracks the stream state
+	 *  values line, charPositionInLine, and p that can change as you
+	 *  move through the input stream.  Indexed from 1..markDepth.
+	 *  A null is kept @ index 0.  Create upon first call to mark().
+	 *  p is an absolute char index here, not an index into data.
+	 */
+	protected List markers;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	/** Absolute char index of the start of the token being lexed or -1.
+	 *  Like a mark, it pins its position in the window.
+	 */
+	protected int tokenStartIndex = -1;
+
+	/** What is name or source of this char stream? */
+	public String name;
+
+	public UnbufferedCharStream(Reader input) {
+		this(input, INITIAL_BUFFER_SIZE, READ_BUFFER_SIZE);
+	}
+
+	public UnbufferedCharStream(Reader input, int size, int readChunkSize) {
+		if ( size<=0 ) {
+			size = INITIAL_BUFFER_SIZE;
+		}
+		if ( readChunkSize<=0 ) {
+			readChunkSize = READ_BUFFER_SIZE;
+		}
+		this.input = input;
+		this.data = new char[size];
+		this.readChunkSize = readChunkSize;
+	}
+
+	public void consume() {
+		if ( !sync(1) ) {
+			return; // at EOF
+		}
+		char c = data[p];
+		charPositionInLine++;
+		if ( c=='\n' ) {
+			line++;
+			charPositionInLine=0;
+		}
+		p++;
+		if ( p==n && markDepth==0 && tokenStartIndex<0 ) {
+			// nobody can back up into the window; start filling at 0 again
+			charBeforeWindow = c;
+			bufferStartIndex += n;
+			n = 0;
+			p = 0;
+		}
+	}
+
+	/** Make sure we have 'need' chars from current position p.  Return
+	 *  false if we hit EOF first.
+	 */
+	protected boolean sync(int need) {
+		while ( p+need>n ) {
+			if ( eof || !fill() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Read at least one more char into the window. Slide or grow the
+	 *  window first if it's full.  Return false upon EOF.
+	 */
+	protected boolean fill() {
+		if ( n+readChunkSize > data.length ) {
+			int keep = windowStart();
+			if ( keep>0 ) { // slide unpinned chars out
+				charBeforeWindow = data[keep-1];
+				System.arraycopy(data, keep, data, 0, n-keep);
+				n -= keep;
+				p -= keep;
+				bufferStartIndex += keep;
+			}
+			if ( n+readChunkSize > data.length ) {
+				char[] newdata = new char[Math.max(data.length*2, n+readChunkSize)];
+				System.arraycopy(data, 0, newdata, 0, n);
+				data = newdata;
+			}
+		}
+		int numRead;
+		try {
+			numRead = input.read(data, n, readChunkSize);
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+		if ( numRead<0 ) {
+			eof = true;
+			return false;
+		}
+		n += numRead;
+		return true;
+	}
+
+	/** Keep the chars from index on until unpinTokenStart() */
+	public void pinTokenStart(int index) {
+		tokenStartIndex = index;
+	}
+
+	public void unpinTokenStart() {
+		tokenStartIndex = -1;
+	}
+
+	/** The oldest index into data we must keep: the earliest marked
+	 *  or pinned position or p if nothing is marked.
+	 */
+	protected int windowStart() {
+		int start = p;
+		if ( tokenStartIndex>=0 && tokenStartIndex-bufferStartIndex<start ) {
+			start = tokenStartIndex-bufferStartIndex;
+		}
+		for (int i=1; i<=markDepth; i++) {
+			CharStreamState state = (CharStreamState)markers.get(i);
+			int m = state.p - bufferStartIndex;
+			if ( m<start ) {
+				start = m;
+			}
+		}
+		return start;
+	}
+
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			int j = p+i;
+			if ( j==-1 ) {
+				return charBeforeWindow;
+			}
+			if ( j<0 ) {
+				if ( bufferStartIndex+j < 0 ) {
+					return CharStream.EOF; // invalid; no char before first char
+				}
+				throw new UnsupportedOperationException("can't look back to char "+
+					(bufferStartIndex+j)+"; window starts at "+bufferStartIndex);
+			}
+			return data[j];
+		}
+		if ( !sync(i) ) {
+			return CharStream.EOF;
+		}
+		return data[p+i-1];
+	}
+
+	public int LT(int i) {
+		return LA(i);
+	}
+
+	/** Return the absolute index of the char to be returned from LA(1). */
+	public int index() {
+		return bufferStartIndex + p;
+	}
+
+	/** We don't know how big the input is so return how many chars we've
+	 *  read so far.  This keeps CommonToken.getText() working for tokens
+	 *  whose text is still in the window and for EOF tokens.
+	 */
+	public int size() {
+		return bufferStartIndex + n;
+	}
+
+	public int mark() {
+		if ( markers==null ) {
+			markers = new ArrayList();
+			markers.add(null); // depth 0 means no backtracking, leave blank
+		}
+		markDepth++;
+		CharStreamState state = null;
+		if ( markDepth>=markers.size() ) {
+			state = new CharStreamState();
+			markers.add(state);
+		}
+		else {
+			state = (CharStreamState)markers.get(markDepth);
+		}
+		state.p = index();
+		state.line = line;
+		state.charPositionInLine = charPositionInLine;
+		lastMarker = markDepth;
+		return markDepth;
+	}
+
+	public void rewind(int m) {
+		CharStreamState state = (CharStreamState)markers.get(m);
+		// restore stream state
+		seek(state.p);
+		line = state.line;
+		charPositionInLine = state.charPositionInLine;
+		release(m);
+	}
+
+	public void rewind() {
+		rewind(lastMarker);
+	}
+
+	public void release(int marker) {
+		// unwind any other markers made after m and release m
+		markDepth = marker;
+		// release this marker
+		markDepth--;
+	}
+
+	/** Seek backwards within the window or consume forward.  Seeking
+	 *  back to a char that slid out of the window is an error; mark()
+	 *  the position first if you need to come back to it.
+	 */
+	public void seek(int index) {
+		if ( index<=index() ) {
+			if ( index<bufferStartIndex ) {
+				throw new UnsupportedOperationException("can't seek to char "+index+
+					"; window starts at "+bufferStartIndex+" (mark() positions you need to seek back to)");
+			}
+			p = index - bufferStartIndex; // just jump; don't update stream state (line, ...)
+			return;
+		}
+		// seek forward, consume until p hits index
+		while ( index()<index ) {
+			int before = index();
+			consume();
+			if ( index()==before ) break; // hit EOF
+		}
+	}
+
+	public String substring(int start, int stop) {
+		if ( start<bufferStartIndex ) {
+			throw new UnsupportedOperationException("can't get text for chars "+start+".."+stop+
+				"; window starts at "+bufferStartIndex+" (copy token text with CommonTokenFactory(true))");
+		}
+		int i = start - bufferStartIndex;
+		int len = stop-start+1;
+		if ( i+len>n ) {
+			sync(i+len-p);
+			len = Math.min(len, n-i);
+		}
+		return new String(data, i, len);
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	public String getSourceName() {
+		return name;
+	}
+
+	/** Return the chars in the current window */
+	public String toString() {
+		return new String(data, 0, n);
+	}
+}
@@ -27,45 +27,69 @@
  */
 package org.antlr.runtime.misc;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 /** A queue that can dequeue and get(i) in O(1) and grow arbitrarily large.
  *  A linked list is fast at dequeue but slow at get(i).  An array is
  *  the reverse.  This is O(1) for both operations.
  *
- *  List grows until you dequeue last element at end of buffer. Then
- *  it resets to start filling at 0 again.  If adds/removes are balanced, the
- *  buffer will not grow too large.
+ *  Elements live in a circular array whose size is a power of two so
+ *  wrapping is a mask not a mod.  The window of retained elements runs
+ *  from logical index 0 (physical index first) for n elements; p is the
+ *  logical index of the head.  Elements before p are only kept if a
+ *  subclass asks for them via keepFrom() (e.g., LookaheadStream while
+ *  there are markers).  When the array fills we first drop what nobody
+ *  needs and grow only if that doesn't free space, so memory tracks the
+ *  real lookahead depth not the length of the input.
  *
  *  No iterator stuff as that's not how we'll use it.
  */
 public class FastQueue<T> {
-    /** dynamically-sized buffer of elements */
-    protected List<T> data = new ArrayList<T>();
-    /** index of next element to fill */
+    public static final int INITIAL_CAPACITY = 16;
+
+    /** circular buffer of elements; length is a power of 2 */
+    protected Object[] data = new Object[INITIAL_CAPACITY];
+    /** data.length-1 */
+    protected int mask = INITIAL_CAPACITY-1;
+    /** physical index in data of logical index 0 */
+    protected int first = 0;
+    /** how many elements in window; logical indexes 0..n-1 */
+    protected int n = 0;
+    /** logical index of the head; next element to remove */
     protected int p = 0;
-	protected int range = -1; // how deep have we gone?	
+    /** how many elements have been dropped off the front of the window;
+     *  logical index i is element offset+i of everything ever added.
+     */
+    protected int offset = 0;
+	protected int range = -1; // how deep have we gone?
 
     public void reset() { clear(); }
-    public void clear() { p = 0; data.clear(); }
+    public void clear() {
+        for (int i=0; i<n; i++) data[(first+i) & mask] = null;
+        first = 0;
+        n = 0;
+        p = 0;
+        offset = 0;
+    }
 
     /** Get and remove first element in queue */
     public T remove() {
         T o = elementAt(0);
         p++;
-        // have we hit end of buffer?
-        if ( p == data.size() ) {
-            // if so, it's an opportunity to start filling at index 0 again
-            clear(); // size goes to 0, but retains memory
-        }
+        drop(keepFrom());
         return o;
     }
 
-    public void add(T o) { data.add(o); }
+    public void add(T o) {
+        if ( n==data.length ) {
+            drop(keepFrom());
+            if ( n==data.length ) grow();
+        }
+        data[(first+n) & mask] = o;
+        n++;
+    }
 
-    public int size() { return data.size() - p; }
+    public int size() { return n - p; }
 
 	public int range() { return range; }
 
@@ -77,16 +101,46 @@ public class FastQueue<T> {
      */
     public T elementAt(int i) {
 		int absIndex = p + i;
-		if ( absIndex >= data.size() ) {
-            throw new NoSuchElementException("queue index "+ absIndex +" > last index "+(data.size()-1));
+		if ( absIndex >= n ) {
+            throw new NoSuchElementException("queue index "+ absIndex +" > last index "+(n-1));
         }
         if ( absIndex < 0 ) {
             throw new NoSuchElementException("queue index "+ absIndex +" < 0");
         }
-		if ( absIndex>range ) range = absIndex;
-        return data.get(absIndex);
+		if ( offset+absIndex>range ) range = offset+absIndex;
+        return (T)data[(first+absIndex) & mask];
     }
 
+    /** Logical index of the first element anyone might still ask for.
+     *  Everything before it can be dropped.  Subclasses that can seek
+     *  backwards override this.
+     */
+    protected int keepFrom() { return p; }
+
+    /** Drop the first k elements of the window */
+    protected void drop(int k) {
+        if ( k<=0 ) return;
+        for (int i=0; i<k; i++) data[(first+i) & mask] = null; // let gc have them
+        first = (first+k) & mask;
+        n -= k;
+        p -= k;
+        offset += k;
+    }
+
+    /** Double the buffer, unwrapping the window to start at 0 */
+    protected void grow() {
+        Object[] bigger = new Object[data.length*2];
+        int head = Math.min(n, data.length-first);
+        System.arraycopy(data, first, bigger, 0, head);
+        System.arraycopy(data, 0, bigger, head, n-head);
+        data = bigger;
+        mask = bigger.length-1;
+        first = 0;
+    }
+
+    /** How many elements the buffer can hold before it must drop or grow */
+    public int capacity() { return data.length; }
+
     /** Return string of current buffer contents; non-destructive */
     public String toString() {
         StringBuffer buf = new StringBuffer();
@@ -97,4 +151,4 @@ public class FastQueue<T> {
         }
         return buf.toString();
     }
-}
\ No newline at end of file
+}
@@ -33,8 +33,13 @@ import java.util.NoSuchElementException;
 
 /** A lookahead queue that knows how to mark/release locations
  *  in the buffer for backtracking purposes. Any markers force the FastQueue
- *  superclass to keep all tokens until no more markers; then can reset
- *  to avoid growing a huge buffer.
+ *  superclass to keep all elements from the first marker on; once there
+ *  are no markers, consumed elements are dropped as we go so the buffer
+ *  only holds the lookahead.
+ *
+ *  Markers and seek() indexes are absolute element indexes, the same
+ *  numbers index() returns, so they stay valid as the buffer drops
+ *  elements off the front.
  */
 public abstract class LookaheadStream<T> extends FastQueue<T> {
     public static final int UNINITIALIZED_EOF_ELEMENT_INDEX = Integer.MAX_VALUE;
@@ -57,6 +62,11 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
     /** tracks how deep mark() calls are nested */
     protected int markDepth = 0;
 
+    /** Absolute index of the outermost marker; we must keep everything
+     *  from there on while markDepth>0.
+     */
+    protected int firstMarker;
+
     public void reset() {
         super.reset();
         currentElementIndex = 0;
@@ -71,18 +81,10 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
 
     public abstract boolean isEOF(T o);
 
-    /** Get and remove first element in queue; override FastQueue.remove();
-     *  it's the same, just checks for backtracking.
-     */
-    public T remove() {
-        T o = elementAt(0);
-        p++;
-        // have we hit end of buffer and not backtracking?
-        if ( p == data.size() && markDepth==0 ) {
-            // if so, it's an opportunity to start filling at index 0 again
-            clear(); // size goes to 0, but retains memory
-        }
-        return o;
+    /** While backtracking, hang on to everything from the first marker */
+    protected int keepFrom() {
+        if ( markDepth<=0 ) return p;
+        return Math.min(p, firstMarker - offset);
     }
 
     /** Make sure we have at least one element to remove, even if EOF */
@@ -93,12 +95,12 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
     }
 
     /** Make sure we have 'need' elements from current position p. Last valid
-     *  p index is data.size()-1.  p+need-1 is the data index 'need' elements
-     *  ahead.  If we need 1 element, (p+1-1)==p must be < data.size().
+     *  p index is n-1.  p+need-1 is the data index 'need' elements
+     *  ahead.  If we need 1 element, (p+1-1)==p must be < n.
      */
     protected void syncAhead(int need) {
-        int n = (p+need-1) - data.size() + 1; // how many more elements we need?
-        if ( n > 0 ) fill(n);                 // out of elements?
+        int more = (p+need-1) - n + 1; // how many more elements we need?
+        if ( more > 0 ) fill(more);     // out of elements?
     }
 
     /** add n elements to buffer */
@@ -106,7 +108,7 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
         for (int i=1; i<=n; i++) {
             T o = nextElement();
             if ( isEOF(o) ) eof = o;
-            data.add(o);
+            add(o);
         }
     }
 
@@ -120,15 +122,16 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
 		if ( k<0 ) return LB(-k);
 		//System.out.print("LT(p="+p+","+k+")=");
         syncAhead(k);
-        if ( (p+k-1) > data.size() ) return eof;
+        if ( (p+k-1) > n ) return eof;
         return elementAt(k-1);
 	}
 
     public int index() { return currentElementIndex; }
 
 	public int mark() {
+        if ( markDepth==0 ) firstMarker = currentElementIndex;
         markDepth++;
-        lastMarker = p; // track where we are in buffer not absolute token index
+        lastMarker = currentElementIndex;
         return lastMarker;
 	}
 
@@ -146,16 +149,22 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
         seek(lastMarker); // rewind but do not release marker
     }
 
-    /** Seek to a 0-indexed position within data buffer.  Can't handle
-     *  case where you seek beyond end of existing buffer.  Normally used
-     *  to seek backwards in the buffer. Does not force loading of nodes.
-     *  Doesn't see to absolute position in input stream since this stream
-     *  is unbuffered. Seeks only into our moving window of elements.
+    /** Seek to an absolute element index.  Going backwards, the element
+     *  must still be in the buffer; i.e., at or after the first marker.
+     *  Seeking forward loads the elements in between.
      */
-    public void seek(int index) { p = index; }
+    public void seek(int index) {
+        int i = index - offset;
+        if ( i<0 ) {
+            throw new NoSuchElementException("can't seek to "+index+"; buffer starts at "+offset);
+        }
+        if ( i>n ) fill(i-n);
+        p = i;
+        currentElementIndex = index;
+    }
 
     protected T LB(int k) {
-        if ( k==1 ) return prevElement;
+        if ( k==1 ) return p>0 ? (T)data[(first+p-1) & mask] : prevElement;
         throw new NoSuchElementException("can't look backwards more than one token in this stream");
     }
-}
\ No newline at end of file
+}
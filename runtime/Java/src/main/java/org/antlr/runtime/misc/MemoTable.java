@@ -0,0 +1,171 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.misc;
+
+import java.util.Arrays;
+
+/** An int->int map for packrat memoization: rule start index to stop
+ *  index for one rule.  Open addressing with linear probing over plain
+ *  int arrays, so lookups and stores don't box.
+ *
+ *  If maxSize>0, the table never holds more than maxSize entries.  When
+ *  it's full we evict the half with the lowest keys; a parse moves
+ *  forward, so it's least likely to backtrack to those input positions
+ *  again.  Losing an entry only costs reparsing.
+ *
+ *  Tracks lookup hits and misses plus evictions for tuning maxSize.
+ */
+public class MemoTable {
+	public static final int INITIAL_CAPACITY = 16;
+
+	/** Marks an empty slot; no input index is this small */
+	protected static final int EMPTY = Integer.MIN_VALUE;
+
+	protected int[] keys;
+	protected int[] values;
+	protected int size = 0;
+
+	/** Most entries to hold; 0 means no limit */
+	protected int maxSize;
+
+	public int hits = 0;
+	public int misses = 0;
+	public int evictions = 0;
+
+	public MemoTable() {
+		this(0);
+	}
+
+	public MemoTable(int maxSize) {
+		this.maxSize = maxSize;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/** Return the value for key or notFound if there is none */
+	public int get(int key, int notFound) {
+		int mask = keys.length-1;
+		for (int i = hash(key)&mask; ; i = (i+1)&mask) {
+			int k = keys[i];
+			if ( k==key ) {
+				hits++;
+				return values[i];
+			}
+			if ( k==EMPTY ) {
+				misses++;
+				return notFound;
+			}
+		}
+	}
+
+	public void put(int key, int value) {
+		int i = slot(key);
+		if ( keys[i]==key ) {
+			values[i] = value;
+			return;
+		}
+		if ( maxSize>0 && size>=maxSize ) {
+			evict();
+		}
+		if ( (size+1)*4 > keys.length*3 ) { // keep load factor <= .75
+			rehash(keys.length*2);
+		}
+		i = slot(key);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		allocate(INITIAL_CAPACITY);
+		size = 0;
+	}
+
+	/** Where key is or would go */
+	protected int slot(int key) {
+		int mask = keys.length-1;
+		int i = hash(key)&mask;
+		while ( keys[i]!=key && keys[i]!=EMPTY ) {
+			i = (i+1)&mask;
+		}
+		return i;
+	}
+
+	/** Drop the entries with the lowest keys, keeping the highest half */
+	protected void evict() {
+		int[] live = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if ( keys[i]!=EMPTY ) live[n++] = keys[i];
+		}
+		Arrays.sort(live);
+		int lastDropped = live[Math.max(1, size/2)-1]; // keys > this survive
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length);
+		int before = size;
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if ( oldKeys[i]!=EMPTY && oldKeys[i]>lastDropped ) {
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+				size++;
+			}
+		}
+		evictions += before-size;
+	}
+
+	protected void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if ( oldKeys[i]!=EMPTY ) {
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	protected void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+	}
+
+	/** Spread nearby input indexes across the table */
+	protected static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h>>>16);
+	}
+}
@@ -29,6 +29,8 @@ package org.antlr.runtime.tree;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** A generic tree implementation with no payload.  You must subclass to
  *  actually have any user data.  ANTLR v3 uses a list of children approach
@@ -37,6 +39,12 @@ import java.util.List;
  *  non-null node is called "nil".
  */
 public abstract class BaseTree implements Tree {
+	/** Which node classes leave toStringTree() as is; see
+	 *  inheritsToStringTree().
+	 */
+	protected static final Map<Class, Boolean> inheritsToStringTree =
+		new ConcurrentHashMap<Class, Boolean>();
+
 	protected List children;
 
 	public BaseTree() {
@@ -344,9 +352,22 @@ public abstract class BaseTree implements Tree {
 			return this.toString();
 		}
 		StringBuffer buf = new StringBuffer();
+		toStringTree(buf);
+		return buf.toString();
+	}
+
+	/** Append the whole tree to buf.  Children append into the same
+	 *  buffer using toStringView() so node text isn't copied, unless
+	 *  their class overrides toStringTree().
+	 */
+	protected void toStringTree(StringBuffer buf) {
+		if ( children==null || children.size()==0 ) {
+			buf.append(toStringView());
+			return;
+		}
 		if ( !isNil() ) {
 			buf.append("(");
-			buf.append(this.toString());
+			buf.append(toStringView());
 			buf.append(' ');
 		}
 		for (int i = 0; children!=null && i < children.size(); i++) {
@@ -354,12 +375,33 @@ public abstract class BaseTree implements Tree {
 			if ( i>0 ) {
 				buf.append(' ');
 			}
-			buf.append(t.toStringTree());
+			if ( t instanceof BaseTree && inheritsToStringTree(t.getClass()) ) {
+				((BaseTree)t).toStringTree(buf);
+			}
+			else {
+				buf.append(t.toStringTree());
+			}
 		}
 		if ( !isNil() ) {
 			buf.append(")");
 		}
-		return buf.toString();
+	}
+
+	/** Does class c use BaseTree's toStringTree()?  Only then can its
+	 *  nodes append to a parent's buffer.
+	 */
+	protected static boolean inheritsToStringTree(Class c) {
+		Boolean inherits = inheritsToStringTree.get(c);
+		if ( inherits==null ) {
+			try {
+				inherits = c.getMethod("toStringTree").getDeclaringClass()==BaseTree.class;
+			}
+			catch (NoSuchMethodException nsme) {
+				inherits = false;
+			}
+			inheritsToStringTree.put(c, inherits);
+		}
+		return inherits;
 	}
 
     public int getLine() {
@@ -372,4 +414,11 @@ public abstract class BaseTree implements Tree {
 
 	/** Override to say how a node (not a tree) should look as text */
 	public abstract String toString();
+
+	/** Same as toString() but lets toStringTree() append a node's text
+	 *  without copying it; override if your nodes can provide a view.
+	 */
+	protected CharSequence toStringView() {
+		return toString();
+	}
 }
@@ -27,6 +27,7 @@
  */
 package org.antlr.runtime.tree;
 
+import org.antlr.runtime.RandomAccessStream;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.TokenStream;
 import org.antlr.runtime.misc.IntArray;
@@ -54,7 +55,7 @@ import java.util.*;
  *
  *  @see CommonTreeNodeStream
  */
-public class BufferedTreeNodeStream implements TreeNodeStream {
+public class BufferedTreeNodeStream implements TreeNodeStream, RandomAccessStream {
 	public static final int DEFAULT_INITIAL_BUFFER_SIZE = 100;
 	public static final int INITIAL_CALL_STACK_SIZE = 10;
 
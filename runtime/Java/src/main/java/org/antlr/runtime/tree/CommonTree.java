@@ -28,6 +28,7 @@
 package org.antlr.runtime.tree;
 
 import org.antlr.runtime.Token;
+import org.antlr.runtime.TextViewToken;
 
 /** A tree node that is wrapper for a Token object.  After 3.0 release
  *  while building tree rewrite stuff, it became clear that computing
@@ -89,6 +90,17 @@ public class CommonTree extends BaseTree {
 		return token.getText();
 	}
 
+	/** The token's text without copying it out of the input */
+	public CharSequence getTextView() {
+		if ( token==null ) {
+			return null;
+		}
+		if ( token instanceof TextViewToken ) {
+			return ((TextViewToken)token).getTextView();
+		}
+		return token.getText();
+	}
+
 	public int getLine() {
 		if ( token==null || token.getLine()==0 ) {
 			if ( getChildCount()>0 ) {
@@ -182,4 +194,23 @@ public class CommonTree extends BaseTree {
 		}
 		return token.getText();
 	}
+
+	protected CharSequence toStringView() {
+		if ( getClass()!=CommonTree.class ) {
+			return toString(); // subclasses may override toString()
+		}
+		if ( isNil() ) {
+			return "nil";
+		}
+		if ( getType()==Token.INVALID_TOKEN_TYPE ) {
+			return "<errornode>";
+		}
+		if ( token==null ) {
+			return null;
+		}
+		if ( token instanceof TextViewToken ) {
+			return ((TextViewToken)token).getTextView();
+		}
+		return token.getText();
+	}
 }
@@ -116,6 +116,17 @@ public class CommonTreeAdaptor extends BaseTreeAdaptor {
 		return ((Tree)t).getText();
 	}
 
+	/** Like getText() but without copying the text out of the input for
+	 *  CommonTree nodes; handy for hashing or comparing identifiers.
+	 */
+	public CharSequence getTextView(Object t) {
+		if ( t==null ) return null;
+		if ( t instanceof CommonTree ) {
+			return ((CommonTree)t).getTextView();
+		}
+		return ((Tree)t).getText();
+	}
+
     public int getType(Object t) {
 		if ( t==null ) return Token.INVALID_TOKEN_TYPE;
 		return ((Tree)t).getType();
@@ -126,7 +126,7 @@ public class CommonTreeNodeStream extends LookaheadStream<Object> implements Tre
         if ( calls==null ) {
             calls = new IntArray();
         }
-        calls.push(p); // save current index
+        calls.push(index()); // save current index
         seek(index);
     }
 
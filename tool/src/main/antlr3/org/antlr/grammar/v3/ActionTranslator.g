@@ -472,6 +472,22 @@ ISOLATED_LEXER_RULE_REF
 		}
 	;
 
+/** $line = expr; or $pos = expr; in a lexer rule, for targets whose
+ *  read of the attribute isn't something you can assign to.
+ */
+SET_LEXER_RULE_ATTR
+	:	'$' ID WS? '=' expr=ATTR_VALUE_EXPR ';' {enclosingRule!=null
+													&& enclosingRule.getLocalAttributeScope($ID.text)!=null
+													&& enclosingRule.getLocalAttributeScope($ID.text).isPredefinedLexerRuleScope
+													&& generator.getTemplates().isDefined("lexerRuleSetPropertyRef_"+$ID.text)}?
+		{
+		ST st = template("lexerRuleSetPropertyRef_"+$ID.text);
+		st.add("scope", enclosingRule.name);
+		st.add("attr", $ID.text);
+		st.add("expr", translateAction($expr.text));
+		}
+	;
+
 /**  $y 	return value, parameter, predefined rule property, or token/rule
  *          reference within enclosing rule's outermost alt.
  *          y must be a "local" reference; i.e., it must be referring to
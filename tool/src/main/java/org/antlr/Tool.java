@@ -49,6 +49,10 @@ public class Tool {
     private boolean generate_DFA_dot = false;
     private String outputDirectory = ".";
     private boolean haveOutputDir = false;
+    /** Where binary resources such as DFA tables go; null means with the
+     *  generated source.
+     */
+    private String resourceOutputDirectory;
     private String inputDirectory = null;
     private String parentGrammarDirectory;
     private String grammarOutputDirectory;
@@ -171,6 +175,25 @@ public class Tool {
                     }
                 }
             }
+			else if (args[i].equals("-ro")) {
+				if (i + 1 >= args.length) {
+					System.err.println("missing resource output directory with -ro option; ignoring");
+				}
+				else {
+					i++;
+					setResourceOutputDirectory(args[i]);
+					if (resourceOutputDirectory.endsWith("/") ||
+						resourceOutputDirectory.endsWith("\\")) {
+						resourceOutputDirectory =
+							resourceOutputDirectory.substring(0, resourceOutputDirectory.length() - 1);
+					}
+					File outDir = new File(resourceOutputDirectory);
+					if (outDir.exists() && !outDir.isDirectory()) {
+						ErrorManager.error(ErrorManager.MSG_OUTPUT_DIR_IS_FILE, resourceOutputDirectory);
+						resourceOutputDirectory = null;
+					}
+				}
+			}
 			else if (args[i].equals("-lib")) {
 				if (i + 1 >= args.length) {
 					System.err.println("missing library directory with -lib option; ignoring");
@@ -727,6 +750,7 @@ public class Tool {
         System.err.println("usage: java org.antlr.Tool [args] file.g [file2.g file3.g ...]");
         System.err.println("  -o outputDir          specify output directory where all output is generated");
         System.err.println("  -fo outputDir         same as -o but force even files with relative paths to dir");
+        System.err.println("  -ro resourceDir       specify output directory for resources such as DFA tables");
         System.err.println("  -lib dir              specify location of token files");
         System.err.println("  -depend               generate file dependencies");
         System.err.println("  -report               print out a report about the grammar(s) processed");
@@ -786,6 +810,20 @@ public class Tool {
         CodeGenerator.MIN_SWITCH_ALTS = minSwitchAlts;
     }
 
+    /**
+     * Set the location (base directory) where binary resources such as DFA
+     * tables should be produced; by default they go with the generated
+     * source.
+     * @param resourceOutputDirectory
+     */
+    public void setResourceOutputDirectory(String resourceOutputDirectory) {
+        this.resourceOutputDirectory = resourceOutputDirectory;
+    }
+
+    public String getResourceOutputDirectory() {
+        return resourceOutputDirectory;
+    }
+
     /**
      * Set the location (base directory) where output files should be produced
      * by the ANTLR tool.
@@ -872,6 +910,22 @@ public class Tool {
         return new BufferedWriter(fw);
     }
 
+    /** Like getOutputFile() but for binary output such as DFA table
+     *  resources, which go under the -ro dir if there is one; if
+     *  outputDirectory==null then write to a byte array.
+     */
+    public OutputStream getOutputStream(Grammar g, String fileName) throws IOException {
+        if (getOutputDirectory() == null) {
+            return new ByteArrayOutputStream();
+        }
+        File outputDir = getResourceOutputDirectory(g.getFileName());
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        FileOutputStream fos = new FileOutputStream(new File(outputDir, fileName));
+        return new BufferedOutputStream(fos);
+    }
+
     /**
      * Return the location where ANTLR will generate output files for a given file. This is a
      * base directory and output files will be relative to here in some cases
@@ -937,6 +991,30 @@ public class Tool {
         return outputDir;
     }
 
+    /**
+     * Return the location where ANTLR will write resources for a given file.
+     * The generated code finds them relative to its own class, so they
+     * go in the same relative directory as the generated source, but under
+     * the -ro dir if there is one; e.g., a build copies generated-resources
+     * into the jar while generated-sources only gets compiled.
+     *
+     * @param fileNameWithPath path to input source
+     * @return
+     */
+    public File getResourceOutputDirectory(String fileNameWithPath) {
+        File outputDir = getOutputDirectory(fileNameWithPath);
+        if (resourceOutputDirectory == null) {
+            return outputDir;
+        }
+        String base = new File(getOutputDirectory()).getPath();
+        String dir = outputDir.getPath();
+        if (haveOutputDir && dir.startsWith(base + File.separator)) {
+            // same subdir of -ro as of -o: -o out -ro res sub/t.g => res/sub
+            return new File(resourceOutputDirectory, dir.substring(base.length() + 1));
+        }
+        return new File(resourceOutputDirectory);
+    }
+
     /**
      * Name a file from the -lib dir.  Imported grammars and .tokens files
      *
@@ -0,0 +1,194 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2010 Terence Parr
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.analysis;
+
+import org.antlr.misc.Interval;
+import org.antlr.misc.IntervalSet;
+import org.antlr.misc.Utils;
+import org.antlr.tool.Grammar;
+
+import java.util.*;
+
+/** Partition the char vocabulary of a lexer into classes of chars that
+ *  no table-driven DFA can tell apart; i.e., two chars are in the same
+ *  class if every edge label either contains both or neither.  The
+ *  DFA tables are then indexed by class rather than by char so a row
+ *  covering, say, every char but a few shrinks to a handful of entries.
+ *  The generated lexer holds one char->class map shared by its DFAs.
+ *
+ *  Char 0xFFFF is always in a class by itself, the highest one, since that
+ *  is EOF cast to char; the runtime DFA then sees EOF outside [min,max]
+ *  exactly when it would without classes.
+ */
+public class CharEquivalenceClasses {
+	/** classOf[c] is the class of char c; classes are numbered in order
+	 *  of their first char.
+	 */
+	protected char[] classOf;
+
+	protected int numberOfClasses;
+
+	/** Label -> sorted classes of its chars; DFA states share labels a lot */
+	protected Map<Label, int[]> classesOfLabel = new HashMap<Label, int[]>();
+
+	/** Compute the classes over the edges of every decision in g that
+	 *  will be generated as tables rather than inline code.
+	 */
+	public CharEquivalenceClasses(Grammar g) {
+		int[] cls = new int[Label.MAX_CHAR_VALUE+1];
+		int[] size = new int[Label.MAX_CHAR_VALUE+2];
+		cls[Label.MAX_CHAR_VALUE] = 1;
+		size[0] = Label.MAX_CHAR_VALUE;
+		size[1] = 1;
+		int n = 2;
+		int[] moved = new int[size.length];
+		int[] splitTo = new int[size.length];
+		Arrays.fill(splitTo, -1);
+		Set<Label> seen = new HashSet<Label>();
+		for (int d=1; d<=g.getNumberOfDecisions(); d++) {
+			DFA dfa = g.getLookaheadDFA(d);
+			if ( dfa==null || dfa.canInlineDecision() ) {
+				continue;
+			}
+			for (DFAState s : dfa.states) {
+				if ( s==null ) {
+					continue;
+				}
+				for (int j = 0; j < s.getNumberOfTransitions(); j++) {
+					Label label = s.transition(j).label;
+					if ( !(label.isAtom() || label.isSet()) || !seen.add(label) ) {
+						continue;
+					}
+					n = refine(cls, size, moved, splitTo, n, charsOf(label));
+				}
+			}
+		}
+		// renumber in order of first char, squeezing out unused ids
+		int[] renumber = new int[n];
+		Arrays.fill(renumber, -1);
+		classOf = new char[cls.length];
+		for (int c=0; c<cls.length; c++) {
+			if ( renumber[cls[c]]<0 ) {
+				renumber[cls[c]] = numberOfClasses++;
+			}
+			classOf[c] = (char)renumber[cls[c]];
+		}
+	}
+
+	/** Split every class that label's chars cut in two; return the new
+	 *  number of class ids.
+	 */
+	protected static int refine(int[] cls, int[] size, int[] moved, int[] splitTo,
+								int n, List<Interval> chars)
+	{
+		for (Interval I : chars) {
+			for (int c=I.a; c<=I.b; c++) {
+				moved[cls[c]]++;
+			}
+		}
+		for (Interval I : chars) {
+			for (int c=I.a; c<=I.b; c++) {
+				int old = cls[c];
+				if ( splitTo[old]<0 ) {
+					// class entirely within label stays put
+					splitTo[old] = moved[old]==size[old] ? old : n++;
+				}
+				if ( splitTo[old]!=old ) {
+					cls[c] = splitTo[old];
+					size[old]--;
+					size[cls[c]]++;
+				}
+			}
+		}
+		for (int i=0; i<n; i++) {
+			moved[i] = 0;
+			splitTo[i] = -1;
+		}
+		return n;
+	}
+
+	/** The intervals of chars on label, leaving out EOT, EOF */
+	protected static List<Interval> charsOf(Label label) {
+		IntervalSet set = (IntervalSet)label.getSet();
+		List<Interval> chars = new ArrayList<Interval>();
+		for (Interval I : set.getIntervals()) {
+			int a = Math.max(I.a, Label.MIN_CHAR_VALUE);
+			int b = Math.min(I.b, Label.MAX_CHAR_VALUE);
+			if ( a<=b ) {
+				chars.add(Interval.create(a, b));
+			}
+		}
+		return chars;
+	}
+
+	public int getNumberOfClasses() {
+		return numberOfClasses;
+	}
+
+	public int classOf(int c) {
+		return classOf[c];
+	}
+
+	/** The classes of the chars on label in ascending order; empty if
+	 *  label has no chars.
+	 */
+	public int[] classesOf(Label label) {
+		int[] classes = classesOfLabel.get(label);
+		if ( classes!=null ) {
+			return classes;
+		}
+		boolean[] member = new boolean[numberOfClasses];
+		int count = 0;
+		for (Interval I : charsOf(label)) {
+			for (int c=I.a; c<=I.b; c++) {
+				if ( !member[classOf[c]] ) {
+					member[classOf[c]] = true;
+					count++;
+				}
+			}
+		}
+		classes = new int[count];
+		int i = 0;
+		for (int k=0; k<numberOfClasses; k++) {
+			if ( member[k] ) {
+				classes[i++] = k;
+			}
+		}
+		classesOfLabel.put(label, classes);
+		return classes;
+	}
+
+	/** The char->class map as a list of class numbers, one per char */
+	public List<Integer> getMap() {
+		List<Integer> map = new ArrayList<Integer>(classOf.length);
+		for (int c=0; c<classOf.length; c++) {
+			map.add(Utils.integer(classOf[c]));
+		}
+		return map;
+	}
+}
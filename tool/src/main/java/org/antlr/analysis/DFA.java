@@ -28,6 +28,7 @@
 package org.antlr.analysis;
 
 import org.antlr.codegen.CodeGenerator;
+import org.antlr.codegen.Target;
 import org.antlr.misc.IntSet;
 import org.antlr.misc.IntervalSet;
 import org.antlr.misc.Utils;
@@ -35,6 +36,8 @@ import org.antlr.runtime.IntStream;
 import org.stringtemplate.v4.ST;
 import org.antlr.tool.*;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 /** A DFA (converted from a grammar's NFA).
@@ -218,9 +221,32 @@ public class DFA {
 	public Vector transitionEdgeTables; // not used by java yet
 	protected int uniqueCompressedSpecialStateNum = 0;
 
+	/** The transition table flattened by row displacement (a comb
+	 *  vector): the edge from state s on char c goes to
+	 *  combNext[combBase[s]+c-min[s]] if combCheck[] at that index is s.
+	 *  Rows interleave in each other's holes.  Computed on demand; see
+	 *  isCombCompressed().
+	 */
+	protected List<Integer> combBase;
+	protected List<Integer> combNext;
+	protected List<Integer> combCheck;
+	protected Boolean combCompressed;
+
+	/** Per-row overhead of the transition[][] encoding in generated
+	 *  code (a string literal, an array slot and an unpack call) counted
+	 *  in encoded chars when deciding whether the comb is smaller.
+	 */
+	public static final int TRANSITION_ROW_OVERHEAD = 8;
+
 	/** Which generator to use if we're building state tables */
 	protected CodeGenerator generator = null;
 
+	/** If non-null, lexer tables are indexed by char class, not char:
+	 *  min, max and transition hold class numbers.  Special states
+	 *  still test chars.
+	 */
+	protected CharEquivalenceClasses charClasses;
+
 	protected DFA() {;}
 
 	public DFA(int decisionNumber, NFAState decisionStartState) {
@@ -339,6 +365,119 @@ public class DFA {
 		return encoded;
 	}
 
+	/** Must the generated DFA map LA(k) through the lexer's char class
+	 *  map before indexing its tables?
+	 */
+	public boolean isCharClassIndexed() {
+		return charClasses!=null;
+	}
+
+	/** Should the generated DFA use the comb-compressed table rather
+	 *  than transition[][]?  Yes if its encoding is smaller.
+	 */
+	public boolean isCombCompressed() {
+		if ( combCompressed==null ) {
+			combCompressed = Boolean.valueOf(createCombTables());
+		}
+		return combCompressed.booleanValue();
+	}
+
+	public List getJavaCompressedBase() { return isCombCompressed() ? getRunLengthEncoding(combBase) : null; }
+	public List getJavaCompressedNext() { return isCombCompressed() ? getRunLengthEncoding(combNext) : null; }
+	public List getJavaCompressedCheck() { return isCombCompressed() ? getRunLengthEncoding(combCheck) : null; }
+
+	/** Pack the non-special rows of transition into combBase/Next/Check,
+	 *  densest rows first, each at the lowest displacement where its
+	 *  edges land on free slots.  Return true if the result encodes
+	 *  smaller than the transition rows.
+	 */
+	protected boolean createCombTables() {
+		if ( transition==null || transition.size()==0 ) return false;
+		int numStates = transition.size();
+		final int[][] cells = new int[numStates][]; // offsets of edges in row
+		Integer[] order = new Integer[numStates];
+		int rowCost = 0;
+		for (int s = 0; s < numStates; s++) {
+			order[s] = Utils.integer(s);
+			Vector row = (Vector)transition.get(s);
+			rowCost += TRANSITION_ROW_OVERHEAD;
+			if ( row==null ) {
+				cells[s] = new int[0];
+				continue;
+			}
+			rowCost += getRunLengthEncoding(row).size();
+			Integer sp = (Integer)special.get(s);
+			int n = 0;
+			int[] offsets = new int[row.size()];
+			if ( sp==null || sp.intValue()<0 ) { // special states don't use tables
+				for (int o = 0; o < row.size(); o++) {
+					if ( row.get(o)!=null ) offsets[n++] = o;
+				}
+			}
+			cells[s] = new int[n];
+			System.arraycopy(offsets, 0, cells[s], 0, n);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return cells[b.intValue()].length - cells[a.intValue()].length;
+			}
+		});
+
+		int[] base = new int[numStates];
+		int[] next = new int[64];
+		int[] check = new int[64];
+		Arrays.fill(check, -1);
+		int size = 1; // slot 0 always exists for rows with no edges
+		int firstFree = 0;
+		for (int i = 0; i < numStates; i++) {
+			int s = order[i].intValue();
+			int[] offsets = cells[s];
+			if ( offsets.length==0 ) break; // sorted, so rest are empty too
+			Vector row = (Vector)transition.get(s);
+			int b = Math.max(0, firstFree - offsets[0]);
+			while ( !fits(check, size, b, offsets) ) b++;
+			int last = b + offsets[offsets.length-1];
+			if ( last>=next.length ) {
+				int newSize = Math.max(next.length*2, last+1);
+				next = Arrays.copyOf(next, newSize);
+				int oldSize = check.length;
+				check = Arrays.copyOf(check, newSize);
+				Arrays.fill(check, oldSize, newSize, -1);
+			}
+			for (int o : offsets) {
+				next[b+o] = ((Integer)row.get(o)).intValue();
+				check[b+o] = s;
+			}
+			base[s] = b;
+			size = Math.max(size, last+1);
+			while ( firstFree<size && check[firstFree]!=-1 ) firstFree++;
+		}
+		if ( size>Character.MAX_VALUE ) return false; // base must fit in a char
+
+		combBase = new ArrayList<Integer>(numStates);
+		for (int s = 0; s < numStates; s++) combBase.add(Utils.integer(base[s]));
+		combNext = new ArrayList<Integer>(size);
+		combCheck = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++) {
+			combNext.add(Utils.integer(check[i]==-1 ? -1 : next[i]));
+			combCheck.add(Utils.integer(check[i]));
+		}
+		int combCost = getRunLengthEncoding(combBase).size() +
+					   getRunLengthEncoding(combNext).size() +
+					   getRunLengthEncoding(combCheck).size();
+		return combCost < rowCost;
+	}
+
+	/** Can a row with edges at offsets sit at displacement b? */
+	protected static boolean fits(int[] check, int size, int b, int[] offsets) {
+		for (int o : offsets) {
+			int i = b + o;
+			if ( i>=size ) return true; // rest is past the end; all free
+			if ( check[i]!=-1 ) return false;
+		}
+		return true;
+	}
+
 	/** Compress the incoming data list so that runs of same number are
 	 *  encoded as number,value pair sequences.  3 -1 -1 -1 28 is encoded
 	 *  as 1 3 3 -1 1 28.  I am pretty sure this is the lossless compression
@@ -350,6 +489,10 @@ public class DFA {
 	 *  only target bad enough to need it.
 	 */
 	public List getRunLengthEncoding(List data) {
+		return getRunLengthEncoding(generator.target, data);
+	}
+
+	public static List getRunLengthEncoding(Target target, List data) {
 		if ( data==null || data.size()==0 ) {
 			// for states with no transitions we want an empty string ""
 			// to hold its place in the transitions array.
@@ -357,8 +500,22 @@ public class DFA {
 			empty.add("");
 			return empty;
 		}
-		int size = Math.max(2,data.size()/2);
-		List encoded = new ArrayList(size); // guess at size
+		String chars = getRunLengthEncodedString(data);
+		List encoded = new ArrayList(chars.length());
+		for (int i = 0; i < chars.length(); i++) {
+			encoded.add(target.encodeIntAsCharEscape(chars.charAt(i)));
+		}
+		return encoded;
+	}
+
+	/** The run-length encoding of data as raw chars rather than escapes;
+	 *  runtime DFA.unpackEncodedString() undoes it.
+	 */
+	public static String getRunLengthEncodedString(List data) {
+		if ( data==null ) {
+			return "";
+		}
+		StringBuffer encoded = new StringBuffer(Math.max(2,data.size()/2)); // guess at size
 		// scan values looking for runs
 		int i = 0;
 		Integer emptyValue = Utils.integer(-1);
@@ -374,18 +531,46 @@ public class DFA {
 				if ( v==null ) {
 					v = emptyValue;
 				}
-				if ( I.equals(v) ) {
+				if ( I.equals(v) && n<Character.MAX_VALUE ) {
 					n++;
 				}
 				else {
 					break;
 				}
 			}
-			encoded.add(generator.target.encodeIntAsCharEscape((char)n));
-			encoded.add(generator.target.encodeIntAsCharEscape((char)I.intValue()));
+			encoded.append((char)n);
+			encoded.append((char)I.intValue());
 			i+=n;
 		}
-		return encoded;
+		return encoded.toString();
+	}
+
+	/** Write the tables in the binary layout runtime DFATableResource
+	 *  reads: decision number, whether comb compressed, the encoded
+	 *  eot, eof, min, max, accept, special tables, then base, next,
+	 *  check or the transition rows.
+	 */
+	public void writeTables(DataOutputStream out) throws IOException {
+		out.writeInt(decisionNumber);
+		boolean comb = isCombCompressed();
+		out.writeBoolean(comb);
+		List[] tables = comb ?
+			new List[] {eot, eof, min, max, accept, special, combBase, combNext, combCheck} :
+			new List[] {eot, eof, min, max, accept, special};
+		for (int i = 0; i < tables.length; i++) {
+			writeEncodedString(out, getRunLengthEncodedString(tables[i]));
+		}
+		if ( !comb ) {
+			out.writeInt(transition.size());
+			for (int i = 0; i < transition.size(); i++) {
+				writeEncodedString(out, getRunLengthEncodedString((List)transition.get(i)));
+			}
+		}
+	}
+
+	public static void writeEncodedString(DataOutputStream out, String s) throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
 	}
 
 	public void createStateTables(CodeGenerator generator) {
@@ -394,6 +579,9 @@ public class DFA {
 		description = getNFADecisionStartState().getDescription();
 		description =
 			generator.target.getTargetStringLiteralFromString(description);
+		if ( nfa.grammar.type==Grammar.LEXER ) {
+			charClasses = generator.getCharClasses();
+		}
 
 		// create all the tables
 		special = new Vector(this.getNumberOfStates()); // Vector<short>
@@ -503,7 +691,16 @@ public class DFA {
 		for (int j = 0; j < s.getNumberOfTransitions(); j++) {
 			Transition edge = (Transition) s.transition(j);
 			Label label = edge.label;
-			if ( label.isAtom() ) {
+			if ( charClasses!=null ) {
+				if ( label.isAtom() || label.isSet() ) {
+					int[] classes = charClasses.classesOf(label);
+					if ( classes.length>0 ) {
+						smin = Math.min(smin, classes[0]);
+						smax = Math.max(smax, classes[classes.length-1]);
+					}
+				}
+			}
+			else if ( label.isAtom() ) {
 				if ( label.getAtom()>=Label.MIN_CHAR_VALUE ) {
 					if ( label.getAtom()<smin ) {
 						smin = label.getAtom();
@@ -554,7 +751,16 @@ public class DFA {
 		for (int j = 0; j < s.getNumberOfTransitions(); j++) {
 			Transition edge = (Transition) s.transition(j);
 			Label label = edge.label;
-			if ( label.isAtom() && label.getAtom()>=Label.MIN_CHAR_VALUE ) {
+			if ( charClasses!=null ) {
+				if ( label.isAtom() || label.isSet() ) {
+					int[] classes = charClasses.classesOf(label);
+					for (int a = 0; a < classes.length; a++) {
+						stateTransitions.set(classes[a]-smin,
+											 Utils.integer(edge.target.stateNumber));
+					}
+				}
+			}
+			else if ( label.isAtom() && label.getAtom()>=Label.MIN_CHAR_VALUE ) {
 				int labelIndex = label.getAtom()-smin; // offset from 0
 				stateTransitions.set(labelIndex,
 									 Utils.integer(edge.target.stateNumber));
@@ -42,9 +42,11 @@ import org.antlr.runtime.tree.CommonTreeNodeStream;
 import org.antlr.tool.*;
 import org.stringtemplate.v4.*;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.*;
+import java.util.zip.CRC32;
 
 /** ANTLR's code generator.
  *
@@ -135,6 +137,19 @@ public class CodeGenerator {
 
 	protected int lineWidth = 72;
 
+	/** Char classes that index this lexer's DFA tables; null if tables
+	 *  are indexed by char.
+	 */
+	protected CharEquivalenceClasses charClasses;
+
+	/** Decisions generated as DFA tables rather than inline code */
+	protected List<DFA> tableDFAs = new ArrayList<DFA>();
+
+	/** Name of the binary resource holding the DFA tables if grammar
+	 *  option dfaTables=resource and the target supports it; else null.
+	 */
+	protected String dfaTableResourceName;
+
 	/** I have factored out the generation of acyclic DFAs to separate class */
 	public ACyclicDFACodeGenerator acyclicDFAGenerator =
 		new ACyclicDFACodeGenerator(this);
@@ -374,6 +389,15 @@ public class CodeGenerator {
 		outputFileST.add("profile", Boolean.valueOf(profile));
 		headerFileST.add("profile", Boolean.valueOf(profile));
 
+		// option ruleStack=true: rules push their index on entry so the
+		// invocation stack is available without scraping a stack trace
+		if ( "true".equals(grammar.getOption("ruleStack")) &&
+			 outputFileST.impl.formalArguments!=null &&
+			 outputFileST.impl.formalArguments.containsKey("ruleStack") )
+		{
+			outputFileST.add("ruleStack", Boolean.TRUE);
+		}
+
 		// RECOGNIZER
 		if ( grammar.type==Grammar.LEXER ) {
 			recognizerST = templates.getInstanceOf("lexer");
@@ -381,6 +405,33 @@ public class CodeGenerator {
 			headerFileST.add("LEXER", Boolean.valueOf(true));
 			recognizerST.add("filterMode",
 							 Boolean.valueOf(filterMode));
+			Object splitAfter = grammar.getOption("splitAfter");
+			if ( splitAfter!=null &&
+				 recognizerST.impl.formalArguments!=null &&
+				 recognizerST.impl.formalArguments.containsKey("splitAfter") )
+			{
+				String lit = "'"+splitAfter+"'";
+				recognizerST.add("splitAfter",
+								 target.getTargetStringLiteralFromANTLRStringLiteral(this, lit));
+			}
+			if ( recognizerST.impl.formalArguments!=null &&
+				 recognizerST.impl.formalArguments.containsKey("grammarChecksum") )
+			{
+				recognizerST.add("grammarChecksum", "0x"+Long.toHexString(getGrammarChecksum())+"L");
+			}
+			if ( recognizerST.impl.formalArguments!=null &&
+				 recognizerST.impl.formalArguments.containsKey("charClasses") )
+			{
+				// must be set before we walk the grammar creating DFA tables
+				CharEquivalenceClasses classes = new CharEquivalenceClasses(grammar);
+				if ( classes.getNumberOfClasses()>2 ) { // more than other chars and EOF
+					charClasses = classes;
+					if ( !"resource".equals(grammar.getOption("dfaTables")) ) {
+						recognizerST.add("charClasses",
+										 DFA.getRunLengthEncoding(target, classes.getMap()));
+					}
+				}
+			}
 		}
 		else if ( grammar.type==Grammar.PARSER ||
 			grammar.type==Grammar.COMBINED )
@@ -450,6 +501,17 @@ public class CodeGenerator {
 		// all recognizers can see Grammar object
 		recognizerST.add("grammar", grammar);
 
+		if ( "resource".equals(grammar.getOption("dfaTables")) &&
+			 tableDFAs.size()>0 &&
+			 outputFileST.impl.formalArguments!=null &&
+			 outputFileST.impl.formalArguments.containsKey("dfaResource") )
+		{
+			dfaTableResourceName = grammar.getRecognizerName()+".dfa";
+			outputFileST.add("dfaResource", dfaTableResourceName);
+			outputFileST.add("dfaResourceChecksum", "0x"+Long.toHexString(getGrammarChecksum())+"L");
+			outputFileST.add("dfaResourceDecisions", tableDFAs.size());
+		}
+
 		if (LAUNCH_ST_INSPECTOR) {
 			outputFileST.inspect();
 			if ( templates.isDefined("headerFile") ) headerFileST.inspect();
@@ -469,6 +531,9 @@ public class CodeGenerator {
 			if ( vocabFileName!=null ) {
 				write(tokenVocabSerialization, vocabFileName);
 			}
+			if ( dfaTableResourceName!=null ) {
+				writeDFATables(dfaTableResourceName);
+			}
 			//System.out.println(outputFileST.getDOTForDependencyGraph(false));
 		}
 		catch (IOException ioe) {
@@ -643,6 +708,7 @@ public class CodeGenerator {
 		else {
 			// generate any kind of DFA here (cyclic or acyclic)
 			dfa.createStateTables(this);
+			tableDFAs.add(dfa);
 			outputFileST.add("cyclicDFAs", dfa);
 			headerFileST.add("cyclicDFAs", dfa);
 			decisionST = templates.getInstanceOf("dfaDecision");
@@ -1225,6 +1291,10 @@ public class CodeGenerator {
 		}
 	}
 
+	public CharEquivalenceClasses getCharClasses() {
+		return charClasses;
+	}
+
 	public ST getRecognizerST() {
 		return outputFileST;
 	}
@@ -1269,6 +1339,47 @@ public class CodeGenerator {
 		//System.out.println("render time for "+fileName+": "+(int)(stop-start)+"ms");
 	}
 
+	/** CRC32 of the grammar tree; any change to the grammar's rules or
+	 *  actions changes it.
+	 */
+	public long getGrammarChecksum() {
+		CRC32 crc = new CRC32();
+		String tree = grammar.getGrammarTree().toStringTree();
+		for (int i=0; i<tree.length(); i++) {
+			crc.update(tree.charAt(i)>>>8);
+			crc.update(tree.charAt(i));
+		}
+		return crc.getValue();
+	}
+
+	/** Write the tables of all table-driven DFAs to one binary resource
+	 *  in the layout runtime DFATableResource reads.  The header carries
+	 *  the grammar checksum and decision count the generated recognizer
+	 *  expects, so a stale copy of the resource is refused.
+	 */
+	public void writeDFATables(String fileName) throws IOException {
+		DataOutputStream out =
+			new DataOutputStream(tool.getOutputStream(grammar, fileName));
+		try {
+			out.writeInt(DFATableResource.MAGIC);
+			out.writeInt(DFATableResource.VERSION);
+			out.writeLong(getGrammarChecksum());
+			out.writeInt(tableDFAs.size());
+			String map = "";
+			if ( charClasses!=null ) {
+				map = DFA.getRunLengthEncodedString(charClasses.getMap());
+			}
+			DFA.writeEncodedString(out, map);
+			out.writeInt(tableDFAs.size());
+			for (DFA dfa : tableDFAs) {
+				dfa.writeTables(out);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
 	/** You can generate a switch rather than if-then-else for a DFA state
 	 *  if there are no semantic predicates and the number of edge label
 	 *  values is small enough; e.g., don't generate a switch for a state
@@ -205,6 +205,8 @@ public class Grammar {
 				add("k");
 				add("backtrack");
 				add("memoize");
+				add("splitAfter");
+				add("dfaTables");
 				}
 			};
 
@@ -218,6 +220,9 @@ public class Grammar {
 				add("k");
 				add("backtrack");
 				add("memoize");
+				add("splitAfter"); // passed on to the generated lexer
+				add("dfaTables");
+				add("ruleStack");
 				}
 			};
 
@@ -232,6 +237,8 @@ public class Grammar {
                 add("backtrack");
                 add("memoize");
                 add("filter");
+                add("dfaTables");
+                add("ruleStack");
             }
         };
 
@@ -240,6 +247,7 @@ public class Grammar {
 			{
 				add("output"); add("ASTLabelType"); add("superClass");
 				add("k"); add("backtrack"); add("memoize"); add("rewrite");
+				add("ruleStack");
 			}
 		};
 
@@ -792,6 +800,9 @@ public class Grammar {
 				String optionName = (String) optionNames.next();
 				if ( !doNotCopyOptionsToLexer.contains(optionName) ) {
 					Object value = options.get(optionName);
+					if ( optionName.equals("splitAfter") ) {
+						value = "'"+value+"'"; // not an ID; requote
+					}
 					lexerGrammarST.addAggr("options.{name,value}", optionName, value);
 				}
 			}
@@ -2487,6 +2498,14 @@ outer:
 		if ( !optionIsValid(key, value) ) {
 			return null;
 		}
+		if ( key.equals("dfaTables") && !value.toString().equals("resource") ) {
+			ErrorManager.grammarError(ErrorManager.MSG_ILLEGAL_OPTION_VALUE,
+									  this,
+									  optionsStartToken,
+									  key,
+									  value);
+			return null;
+		}
         if ( key.equals("backtrack") && value.toString().equals("true") ) {
             composite.getRootGrammar().atLeastOneBacktrackOption = true;
         }
@@ -2639,6 +2658,18 @@ outer:
 		return composite.getDelegatedRules(this);
 	}
 
+	/** Get the names of all rules in the composite, indexed by rule
+	 *  number; slot 0 and any unused index hold "invalidRule".
+	 */
+	public List<String> getRuleNamesByIndex() {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < composite.ruleIndexToRuleList.size(); i++) {
+			Rule r = composite.ruleIndexToRuleList.get(i);
+			names.add(r!=null ? r.name : "invalidRule");
+		}
+		return names;
+	}
+
 	/** Get set of all rules imported from all delegate grammars even if
 	 *  indirectly delegated.
 	 */
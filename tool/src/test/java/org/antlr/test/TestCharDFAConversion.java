@@ -27,6 +27,7 @@
  */
 package org.antlr.test;
 
+import org.antlr.analysis.CharEquivalenceClasses;
 import org.antlr.analysis.DFA;
 import org.antlr.analysis.DFAOptimizer;
 import org.antlr.codegen.CodeGenerator;
@@ -495,6 +496,94 @@ public class TestCharDFAConversion extends BaseTest {
 		checkDecision(g, 4, expecting, null); // 4 is Tokens rule
 	}
 
+	@Test public void testCombCompressedTransitions() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar t;\n"+
+			"IF : 'if' ;\n"+
+			"INT : 'int' ;\n"+
+			"WHILE : 'while' ;\n"+
+			"RETURN : 'return' ;\n"+
+			"ID : ('a'..'z'|'A'..'Z'|'_') ('a'..'z'|'A'..'Z'|'_'|'0'..'9')* ;\n"+
+			"NUM : ('0'..'9')+ ;\n"+
+			"WS : (' '|'\\n')+ ;\n");
+		CodeGenerator generator = new CodeGenerator(newTool(), g, "Java");
+		g.setCodeGenerator(generator);
+		g.buildNFA();
+		g.createLookaheadDFAs(false);
+		DFA dfa = g.getLookaheadDFA(g.getNumberOfDecisions()); // Tokens
+		dfa.createStateTables(generator);
+		assertTrue(dfa.isCombCompressed());
+
+		// every edge in transition[][] must come out of the comb
+		char[] base = org.antlr.runtime.DFA.unpackEncodedStringToUnsignedChars(decode(dfa.getJavaCompressedBase()));
+		short[] next = org.antlr.runtime.DFA.unpackEncodedString(decode(dfa.getJavaCompressedNext()));
+		short[] check = org.antlr.runtime.DFA.unpackEncodedString(decode(dfa.getJavaCompressedCheck()));
+		int edges = 0;
+		for (int s = 0; s < dfa.transition.size(); s++) {
+			List row = (List)dfa.transition.get(s);
+			if ( row==null || ((Integer)dfa.special.get(s)).intValue()>=0 ) continue;
+			int min = ((Integer)dfa.min.get(s)).intValue();
+			int max = ((Integer)dfa.max.get(s)).intValue();
+			for (int c = min; c <= max; c++) {
+				int i = base[s]+c-min;
+				int target = check[i]==s ? next[i] : -1;
+				Integer expected = (Integer)row.get(c-min);
+				assertEquals(expected!=null ? expected.intValue() : -1, target);
+				if ( expected!=null ) edges++;
+			}
+		}
+		assertTrue(edges>100);
+	}
+
+	@Test public void testCharClassIndexedTables() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar t;\n"+
+			"WHILE : 'while' ;\n"+
+			"ID : ('a'..'z'|'\\u00C0'..'\\uFFFE') ('a'..'z'|'0'..'9'|'\\u00C0'..'\\uFFFE')* ;\n"+
+			"NUM : ('0'..'9')+ ;\n"+
+			"FLOAT : ('0'..'9')+ '.' ('0'..'9')* ;\n"+
+			"WS : (' '|'\\n')+ ;\n");
+		CodeGenerator generator = new CodeGenerator(newTool(), g, "Java");
+		g.setCodeGenerator(generator);
+		g.buildNFA();
+		g.createLookaheadDFAs(false);
+		generator.genRecognizer();
+		CharEquivalenceClasses classes = generator.getCharClasses();
+		assertNotNull(classes);
+		// WS chars, '.', digits, w, h, i, l, e, other ID chars, the rest, EOF
+		assertEquals(11, classes.getNumberOfClasses());
+		assertEquals(classes.classOf(' '), classes.classOf('\n'));
+		assertEquals(classes.classOf('b'), classes.classOf('\u4E2D'));
+		assertEquals(classes.classOf('\t'), classes.classOf('!'));
+		assertTrue(classes.classOf('w')!=classes.classOf('h'));
+		assertEquals(classes.getNumberOfClasses()-1, classes.classOf('\uFFFF'));
+
+		DFA dfa = g.getLookaheadDFA(g.getNumberOfDecisions()); // Tokens
+		assertTrue(dfa.isCharClassIndexed());
+		for (int s = 0; s < dfa.transition.size(); s++) {
+			if ( dfa.min.get(s)==null ) continue;
+			int min = ((Integer)dfa.min.get(s)).intValue();
+			int max = ((Integer)dfa.max.get(s)).intValue();
+			assertTrue(max-min < classes.getNumberOfClasses());
+			assertEquals(-1, ((Integer)dfa.special.get(s)).intValue());
+		}
+	}
+
+	/** Undo the Java string escapes the code generator produces */
+	protected String decode(List encoded) {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < encoded.size(); i++) {
+			String e = (String)encoded.get(i);
+			if ( e.startsWith("\\u") ) {
+				buf.append((char)Integer.parseInt(e.substring(2), 16));
+			}
+			else {
+				buf.append((char)Integer.parseInt(e.substring(1), 8));
+			}
+		}
+		return buf.toString();
+	}
+
 	// S U P P O R T
 
 	public void _template() throws Exception {
@@ -0,0 +1,496 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2010 Terence Parr
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.*;
+import org.antlr.runtime.tree.CommonTreeAdaptor;
+import org.antlr.runtime.tree.Tree;
+import org.antlr.tool.Grammar;
+import org.antlr.tool.Interpreter;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestCharStreams extends BaseTest {
+	protected String writeBytes(String fileName, String content, String encoding)
+		throws IOException
+	{
+		new File(tmpdir).mkdirs();
+		File f = new File(tmpdir, fileName);
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(content.getBytes(encoding));
+		out.close();
+		return f.getAbsolutePath();
+	}
+
+	/** Walk both streams char by char checking they agree on everything */
+	protected void assertSameStream(CharStream expected, CharStream found) {
+		assertEquals(expected.size(), found.size());
+		while ( expected.LA(1)!=CharStream.EOF ) {
+			assertEquals(expected.index(), found.index());
+			assertEquals(expected.LA(1), found.LA(1));
+			assertEquals(expected.LA(-1), found.LA(-1));
+			assertEquals(expected.getLine(), found.getLine());
+			assertEquals(expected.getCharPositionInLine(), found.getCharPositionInLine());
+			expected.consume();
+			found.consume();
+		}
+		assertEquals(CharStream.EOF, found.LA(1));
+		assertEquals(expected.toString(), found.toString());
+	}
+
+	@Test public void testMappedLatin1() throws Exception {
+		String text = "ab\ncd\u00e9\n";
+		String fileName = writeBytes("t.txt", text, "ISO-8859-1");
+		CharStream input = new ANTLRMappedFileStream(fileName, "ISO-8859-1");
+		assertSameStream(new ANTLRStringStream(text), input);
+		assertEquals("cd\u00e9", input.substring(3, 5));
+	}
+
+	@Test public void testMappedUTF8WithSurrogates() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<3*ANTLRMappedFileStream.CHECKPOINT_INTERVAL; i++) {
+			buf.append("a\u00e9\u4e2d\ud83d\ude00\n".charAt(i%6));
+		}
+		String text = buf.toString();
+		String fileName = writeBytes("t.txt", text, "UTF-8");
+		assertSameStream(new ANTLRStringStream(text),
+						 new ANTLRMappedFileStream(fileName, "UTF-8"));
+	}
+
+	@Test public void testMappedMarkRewindSeek() throws Exception {
+		String text = "abc\ndef\u4e2d\nghi";
+		String fileName = writeBytes("t.txt", text, "UTF-8");
+		CharStream input = new ANTLRMappedFileStream(fileName);
+		input.consume();
+		int m = input.mark();
+		input.seek(8);
+		assertEquals('\n', input.LA(1));
+		assertEquals(2, input.getLine());
+		assertEquals(4, input.getCharPositionInLine());
+		input.rewind(m);
+		assertEquals(1, input.index());
+		assertEquals('b', input.LA(1));
+		assertEquals(1, input.getLine());
+		assertEquals(1, input.getCharPositionInLine());
+		assertEquals("def\u4e2d", input.substring(4, 7));
+	}
+
+	@Test public void testMappedTokenText() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar t;\n"+
+			"ID : 'a'..'z'+;\n" +
+			"WS : (' '|'\\n')+;\n");
+		String fileName = writeBytes("t.txt", "abc def\nghi", "US-ASCII");
+		CharStream input = new ANTLRMappedFileStream(fileName, "US-ASCII");
+		Interpreter lexEngine = new Interpreter(g, input);
+		BufferedTokenStream tokens = new BufferedTokenStream(lexEngine);
+		assertEquals("def", tokens.LT(3).getText());
+		assertEquals("ghi", tokens.LT(5).getText());
+		assertEquals(2, tokens.LT(5).getLine());
+		assertEquals("abc def\nghi", tokens.toString());
+	}
+
+	@Test(expected=java.io.UnsupportedEncodingException.class)
+	public void testMappedRejectsMultiByteEncodings() throws Exception {
+		String fileName = writeBytes("t.txt", "abc", "UTF-16");
+		new ANTLRMappedFileStream(fileName, "UTF-16");
+	}
+
+	@Test public void testCompactLatin1() throws Exception {
+		String text = "ab\ncd\u00e9\n";
+		ANTLRCompactStringStream input = new ANTLRCompactStringStream(text);
+		assertTrue(input.isCompact());
+		assertSameStream(new ANTLRStringStream(text), input);
+		assertEquals("cd\u00e9", input.substring(3, 5));
+	}
+
+	@Test public void testCompactFallsBackToChars() throws Exception {
+		String text = "ab\ncd\u4e2d\n";
+		ANTLRCompactStringStream input = new ANTLRCompactStringStream(text);
+		assertFalse(input.isCompact());
+		assertSameStream(new ANTLRStringStream(text), input);
+		assertEquals("cd\u4e2d", input.substring(3, 5));
+	}
+
+	@Test public void testCompactTokenText() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar t;\n"+
+			"ID : 'a'..'z'+;\n" +
+			"WS : (' '|'\\n')+;\n");
+		CharStream input = new ANTLRCompactStringStream("abc def\nghi");
+		Interpreter lexEngine = new Interpreter(g, input);
+		BufferedTokenStream tokens = new BufferedTokenStream(lexEngine);
+		assertEquals("def", tokens.LT(3).getText());
+		assertEquals(2, tokens.LT(5).getLine());
+		assertEquals("abc def\nghi", tokens.toString());
+	}
+
+	/** Words and single spaces; hand-built so it runs Lexer.nextToken() */
+	static class WordLexer extends Lexer {
+		public static final int ID = 4;
+		public static final int WS = 5;
+		public WordLexer(CharStream input) { super(input); }
+		public String getGrammarFileName() { return "WordLexer"; }
+		public void mTokens() throws RecognitionException {
+			if ( input.LA(1)==' ' || input.LA(1)=='\n' ) {
+				state.type = WS;
+				input.consume();
+				return;
+			}
+			state.type = ID;
+			matchRange('a', 'z');
+			while ( input.LA(1)>='a' && input.LA(1)<='z' ) input.consume();
+		}
+	}
+
+	/** Like WordLexer but whitespace runs are one token */
+	static class RunLexer extends WordLexer {
+		public RunLexer(CharStream input) { super(input); }
+		public void mTokens() throws RecognitionException {
+			if ( input.LA(1)==' ' || input.LA(1)=='\n' ) {
+				state.type = WS;
+				while ( input.LA(1)==' ' || input.LA(1)=='\n' ) input.consume();
+				return;
+			}
+			super.mTokens();
+		}
+	}
+
+	@Test public void testEditableStream() throws Exception {
+		ANTLREditableStringStream input = new ANTLREditableStringStream("abc\ndef");
+		input.replace(1, 1, "xy");   // axyc\ndef
+		input.replace(6, 0, "\nz"); // axyc\nd\nzef
+		input.replace(0, 1, "");     // xyc\nd\nzef
+		assertEquals("xyc\nd\nzef", input.toString());
+		assertEquals("c\nd\nz", input.substring(2, 6));
+		assertEquals("c\nd\nz", input.substringView(2, 6).toString());
+		input.seek(7);
+		assertEquals('e', input.LA(1));
+		assertEquals('z', input.LA(-1));
+		assertEquals(3, input.getLine());
+		assertEquals(1, input.getCharPositionInLine());
+	}
+
+	@Test public void testUnbuffered() throws Exception {
+		String text = "ab\ncd\u4e2d\n";
+		CharStream input = new UnbufferedCharStream(new StringReader(text), 2, 1);
+		CharStream expected = new ANTLRStringStream(text);
+		while ( expected.LA(1)!=CharStream.EOF ) {
+			assertEquals(expected.index(), input.index());
+			assertEquals(expected.LA(1), input.LA(1));
+			assertEquals(expected.LA(2), input.LA(2));
+			assertEquals(expected.LA(-1), input.LA(-1));
+			assertEquals(expected.getLine(), input.getLine());
+			assertEquals(expected.getCharPositionInLine(), input.getCharPositionInLine());
+			expected.consume();
+			input.consume();
+		}
+		assertEquals(CharStream.EOF, input.LA(1));
+	}
+
+	@Test public void testUnbufferedMarkRewind() throws Exception {
+		CharStream input = new UnbufferedCharStream(new StringReader("abc\ndef"), 2, 1);
+		input.consume();
+		int m = input.mark();
+		input.seek(6);
+		assertEquals('f', input.LA(1));
+		assertEquals(2, input.getLine());
+		assertEquals("bc\nde", input.substring(1, 5));
+		input.rewind(m);
+		assertEquals(1, input.index());
+		assertEquals('b', input.LA(1));
+		assertEquals('a', input.LA(-1));
+		assertEquals(1, input.getLine());
+		assertEquals(1, input.getCharPositionInLine());
+	}
+
+	@Test public void testUnbufferedSeekBeforeWindow() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<1000; i++) buf.append("abcdefghij");
+		UnbufferedCharStream input = new UnbufferedCharStream(new StringReader(buf.toString()), 8, 4);
+		for (int i=0; i<5000; i++) input.consume();
+		assertTrue(input.toString().length()<=8); // nothing pinned so window stays small
+		String msg = null;
+		try { input.seek(10); }
+		catch (UnsupportedOperationException uoe) { msg = uoe.getMessage(); }
+		assertNotNull(msg);
+		assertTrue(msg.startsWith("can't seek to char 10"));
+	}
+
+	@Test public void testUnbufferedLexerCopiesTokenText() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<200; i++) buf.append("abc de\n");
+		WordLexer lexer = new WordLexer(new UnbufferedCharStream(new StringReader(buf.toString()), 4, 2));
+		lexer.setTokenFactory(new CommonTokenFactory(true));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		assertEquals(buf.toString(), tokens.toString());
+		Token t = tokens.get(tokens.size()-3); // last "de"
+		assertEquals("de", t.getText());
+		assertEquals(200, t.getLine());
+		assertEquals(4, t.getCharPositionInLine());
+		assertEquals(Token.EOF, tokens.get(tokens.size()-1).getType());
+	}
+
+	@Test public void testInputStreamFromBytes() throws Exception {
+		String text = "ab\ncd\u4e2d\ud83d\ude00\n";
+		CharStream input = new ANTLRInputStream(text.getBytes("UTF-8"), "UTF-8");
+		assertSameStream(new ANTLRStringStream(text), input);
+	}
+
+	@Test public void testInputStreamFromByteBuffer() throws Exception {
+		String text = "ab\ncd\u4e2d\n";
+		ByteBuffer bytes = ByteBuffer.wrap(("xx"+text).getBytes("UTF-16BE"));
+		bytes.position(4); // skip "xx"
+		CharStream input = new ANTLRInputStream(bytes, "UTF-16BE");
+		assertSameStream(new ANTLRStringStream(text), input);
+	}
+
+	@Test public void testInputStreamFromFile() throws Exception {
+		String text = "abc\n\u00e9\u4e2d";
+		String fileName = writeBytes("t.txt", text, "UTF-8");
+		CharStream input = new ANTLRInputStream(new File(fileName), "UTF-8");
+		assertSameStream(new ANTLRStringStream(text), input);
+		assertEquals(fileName, input.getSourceName());
+	}
+
+	@Test public void testLineIndexed() throws Exception {
+		String text = "ab\n\ncd\ne";
+		ANTLRStringStream input = new ANTLRStringStream(text);
+		input.setLineIndexed(true);
+		assertSameStream(new ANTLRStringStream(text), input);
+		assertEquals(3, input.getLine(4));
+		assertEquals(1, input.getCharPositionInLine(5));
+		assertEquals(1, input.getLine(0)); // search backwards
+		assertEquals(4, input.getLine(8));
+	}
+
+	@Test public void testCompactLineIndexed() throws Exception {
+		String text = "ab\n\ncd\u00e9\ne";
+		ANTLRCompactStringStream input = new ANTLRCompactStringStream(text);
+		input.setLineIndexed(true);
+		assertTrue(input.isCompact());
+		assertSameStream(new ANTLRStringStream(text), input);
+	}
+
+	@Test public void testLineIndexedMarkRewind() throws Exception {
+		ANTLRStringStream input = new ANTLRStringStream("abc\ndef");
+		input.setLineIndexed(true);
+		input.consume();
+		int m = input.mark();
+		input.seek(6);
+		assertEquals(2, input.getLine());
+		assertEquals(2, input.getCharPositionInLine());
+		input.rewind(m);
+		assertEquals(1, input.getLine());
+		assertEquals(1, input.getCharPositionInLine());
+		input.setLineIndexed(false); // resumes counting from here
+		input.seek(5);
+		assertEquals(2, input.getLine());
+		assertEquals(1, input.getCharPositionInLine());
+	}
+
+	@Test public void testLexerRecordsOffsetsOnly() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<100; i++) buf.append("abc de\n");
+		ANTLRStringStream input = new ANTLRStringStream(buf.toString());
+		input.setLineIndexed(true);
+		CommonTokenStream tokens = new CommonTokenStream(new WordLexer(input));
+		tokens.fill();
+		CommonTokenStream expected =
+			new CommonTokenStream(new WordLexer(new ANTLRStringStream(buf.toString())));
+		expected.fill();
+		assertEquals(expected.size(), tokens.size());
+		for (int i=0; i<tokens.size(); i++) {
+			assertEquals(expected.get(i).toString(), tokens.get(i).toString());
+		}
+		Token t = tokens.get(tokens.size()-3); // last "de"
+		assertEquals(100, t.getLine());
+		assertEquals(4, t.getCharPositionInLine());
+	}
+
+	@Test public void testSubstringView() throws Exception {
+		ANTLRStringStream input = new ANTLRStringStream("abc def");
+		CharSequence v = input.substringView(4, 6);
+		assertEquals("def", v.toString());
+		assertEquals("def".hashCode(), v.hashCode());
+		assertFalse(v.equals("def"));
+		assertTrue("def".contentEquals(v));
+		assertEquals("ef", v.subSequence(1, 3).toString());
+		CharSequence c = new ANTLRCompactStringStream("abc d\u00e9f").substringView(4, 6);
+		assertEquals(v.length(), c.length());
+		assertEquals("d\u00e9f".hashCode(), c.hashCode());
+		assertFalse(c.equals(v));
+	}
+
+	@Test public void testTokenTextView() throws Exception {
+		WordLexer lexer = new WordLexer(new ANTLRStringStream("abc de abc"));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		CommonToken a = (CommonToken)tokens.get(0);
+		CommonToken b = (CommonToken)tokens.get(4);
+		assertEquals("abc", a.getTextView().toString());
+		assertTrue(a.getTextView() instanceof CharArrayView);
+		assertEquals(a.getTextView(), b.getTextView());
+		assertEquals(a.getTextView().hashCode(), b.getTextView().hashCode());
+		b.setText("xyz");
+		assertEquals("xyz", b.getTextView());
+		assertEquals("<EOF>", ((CommonToken)tokens.get(tokens.size()-1)).getTextView());
+	}
+
+	@Test public void testTreeTextView() throws Exception {
+		WordLexer lexer = new WordLexer(new ANTLRStringStream("abc de"));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		CommonTreeAdaptor adaptor = new CommonTreeAdaptor();
+		Object root = adaptor.create(tokens.get(0));
+		adaptor.addChild(root, adaptor.create(tokens.get(2)));
+		adaptor.addChild(root, adaptor.create(Token.INVALID_TOKEN_TYPE, "bad"));
+		assertEquals("de", adaptor.getTextView(adaptor.getChild(root, 0)).toString());
+		assertEquals("(abc de <errornode>)", ((Tree)root).toStringTree());
+	}
+
+	@Test public void testTokenTextCache() throws Exception {
+		TokenTextCache cache = new TokenTextCache(16, 4);
+		WordLexer lexer = new WordLexer(new ANTLRStringStream("abc de abc abcdefg abcdefg"));
+		lexer.setTokenFactory(new CommonTokenFactory(false, cache));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		assertTrue(tokens.get(0).getText()==tokens.get(4).getText());
+		assertTrue(tokens.get(1).getText()==tokens.get(3).getText()); // " "
+		assertFalse(tokens.get(6).getText()==tokens.get(8).getText()); // too long
+		assertEquals("abcdefg", tokens.get(8).getText());
+		assertEquals(2, cache.getMisses()); // abc, " "; text is looked up lazily
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test public void testTokenTextCacheCopiesAndEvicts() throws Exception {
+		TokenTextCache cache = new TokenTextCache(2, 10);
+		WordLexer lexer = new WordLexer(new ANTLRStringStream("a b c d a"));
+		lexer.setTokenFactory(new CommonTokenFactory(true, cache));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		assertEquals("a b c d a", tokens.toString());
+		assertEquals(2, cache.getCapacity());
+		assertFalse(tokens.get(0).getText()==tokens.get(8).getText()); // a was evicted
+		cache.clear();
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test public void testParallelLexerResyncsAcrossSeams() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<300; i++) buf.append(i%7==0 ? "ab   cd\n\n" : "x y\n");
+		String text = buf.toString();
+		ParallelLexer lexers = new ParallelLexer(new ParallelLexer.LexerFactory() {
+			public Lexer newLexer(CharStream input) { return new RunLexer(input); }
+			public String getSplitAfterChars() { return null; }
+		});
+		lexers.setMinChunkSize(7);
+		lexers.setSplitAfterChars(" \n"); // splits inside whitespace runs
+		CommonTokenStream tokens = lexers.tokenize(new ANTLRStringStream(text));
+		CommonTokenStream expected = new CommonTokenStream(new RunLexer(new ANTLRStringStream(text)));
+		expected.fill();
+		assertEquals(expected.size(), tokens.size());
+		for (int i=0; i<tokens.size(); i++) {
+			assertEquals(expected.get(i).toString(), tokens.get(i).toString());
+		}
+		assertEquals(text, tokens.toString());
+	}
+
+	/** RunLexer plus "..." strings that may hold anything, newlines too */
+	static class QuoteLexer extends RunLexer {
+		public static final int STRING = 6;
+		public List<String> errors = new ArrayList<String>();
+		public QuoteLexer(CharStream input) { super(input); }
+		public void mTokens() throws RecognitionException {
+			if ( input.LA(1)=='"' ) {
+				state.type = STRING;
+				input.consume();
+				while ( input.LA(1)!='"' && input.LA(1)!=CharStream.EOF ) input.consume();
+				match('"');
+				return;
+			}
+			super.mTokens();
+		}
+		public void emitErrorMessage(String msg) { errors.add(msg); }
+	}
+
+	@Test public void testParallelLexerReportsOnlyKeptErrors() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<50; i++) buf.append("ab \"x\n#\n\" cd\n"); // # is fine in strings
+		buf.append("e#f\n");
+		final List<QuoteLexer> made = new ArrayList<QuoteLexer>();
+		java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(4);
+		ParallelLexer lexers = new ParallelLexer(new ParallelLexer.LexerFactory() {
+			public Lexer newLexer(CharStream input) {
+				QuoteLexer lexer = new QuoteLexer(input);
+				made.add(lexer);
+				return lexer;
+			}
+			public String getSplitAfterChars() { return "\n"; }
+		}, pool, 20);
+		lexers.setMinChunkSize(7); // most chunks start inside a string
+		CommonTokenStream tokens = lexers.tokenize(new ANTLRStringStream(buf.toString()));
+		pool.shutdown();
+		assertTrue(made.size()>10);
+		List<String> errors = new ArrayList<String>();
+		for (QuoteLexer lexer : made) errors.addAll(lexer.errors);
+		assertEquals("[line 151:1 mismatched character '#' expecting set 'a'..'z']", errors.toString());
+		CommonTokenStream expected = new CommonTokenStream(new QuoteLexer(new ANTLRStringStream(buf.toString())));
+		expected.fill();
+		assertEquals(expected.getTokens().toString(), tokens.getTokens().toString());
+	}
+
+	@Test public void testParallelLexerLineIndexed() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i=0; i<1000; i++) buf.append("abc de\n");
+		ANTLRCompactStringStream input = new ANTLRCompactStringStream(buf.toString());
+		input.setLineIndexed(true);
+		ParallelLexer lexers = new ParallelLexer(new ParallelLexer.LexerFactory() {
+			public Lexer newLexer(CharStream input) { return new RunLexer(input); }
+			public String getSplitAfterChars() { return null; }
+		}, java.util.concurrent.Executors.newFixedThreadPool(4), 4);
+		lexers.setMinChunkSize(100);
+		lexers.setSplitAfterChars("\n");
+		CommonTokenStream tokens = lexers.tokenize(input);
+		assertEquals(4001, tokens.size());
+		Token t = tokens.get(3998); // last "de"
+		assertEquals("de", t.getText());
+		assertEquals(3998, t.getTokenIndex());
+		assertEquals(1000, t.getLine());
+		assertEquals(4, t.getCharPositionInLine());
+		assertTrue(t.getInputStream()==input);
+	}
+}
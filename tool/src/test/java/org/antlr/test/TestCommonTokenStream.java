@@ -33,6 +33,9 @@ import org.antlr.tool.Grammar;
 import org.antlr.tool.Interpreter;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+
 /** This actually tests new (12/4/09) buffered but on-demand fetching stream */
 public class TestCommonTokenStream extends BaseTest {
     @Test public void testFirstToken() throws Exception {
@@ -220,4 +223,340 @@ public class TestCommonTokenStream extends BaseTest {
         assertEquals("=", tokens.LT(-3).getText());
         assertEquals("x", tokens.LT(-4).getText());
     }
-}
\ No newline at end of file
+
+    @Test public void testColumnarOffChannel() throws Exception {
+        TokenSource lexer = // simulate input " x =34  ;\n"
+            new TokenSource() {
+                int i = 0;
+                Token[] tokens = {
+                    new CommonToken(1," "),
+                    new CommonToken(1,"x"),
+                    new CommonToken(1," "),
+                    new CommonToken(1,"="),
+                    new CommonToken(1,"34"),
+                    new CommonToken(1,";"),
+                    new CommonToken(Token.EOF,"")
+                };
+                {
+                    tokens[0].setChannel(Lexer.HIDDEN);
+                    tokens[2].setChannel(Lexer.HIDDEN);
+                }
+                public Token nextToken() {
+                    return tokens[i++];
+                }
+                public String getSourceName() { return "test"; }
+            };
+
+        ColumnarTokenStream tokens = new ColumnarTokenStream(lexer);
+
+        assertEquals("x", tokens.LT(1).getText()); // must skip first off channel token
+        tokens.consume();
+        assertEquals("=", tokens.LT(1).getText());
+        assertEquals("x", tokens.LT(-1).getText());
+        assertEquals(3, tokens.LT(1).getTokenIndex());
+        assertEquals(tokens.LT(1), tokens.get(3));
+        tokens.consume();
+        tokens.consume();
+        assertEquals(Token.EOF, tokens.LA(2));
+        assertEquals(" x =34;", tokens.toString());
+        assertEquals(Lexer.HIDDEN, tokens.get(2).getChannel());
+    }
+
+    @Test public void testColumnarMatchesCommon() throws Exception {
+        Grammar g = new Grammar(
+            "lexer grammar t;\n"+
+            "ID : 'a'..'z'+;\n" +
+            "INT : '0'..'9'+;\n" +
+            "SEMI : ';';\n" +
+            "WS : (' '|'\\n')+;\n");
+        StringBuffer buf = new StringBuffer();
+        for (int i=0; i<3000; i++) buf.append("x 34;\n"); // > 1 chunk
+        String text = buf.toString();
+        BufferedTokenStream expected =
+            new BufferedTokenStream(new Interpreter(g, new ANTLRStringStream(text)));
+        ColumnarTokenStream tokens =
+            new ColumnarTokenStream(new Interpreter(g, new ANTLRStringStream(text)));
+        expected.fill();
+        tokens.fill();
+        assertEquals(expected.size(), tokens.size());
+        assertTrue(tokens.size()>ColumnarTokenList.CHUNK_SIZE);
+        for (int i=0; i<tokens.size(); i++) {
+            assertEquals(expected.get(i).toString(), tokens.get(i).toString());
+        }
+        Token t = tokens.get(5000);
+        t.setText("y");
+        t.setType(99);
+        assertEquals("y", tokens.get(5000).getText());
+        assertEquals(99, tokens.getTokenList().getType(5000));
+        assertEquals(text.length()-1, ((ColumnarTokenList.TokenView)tokens.get(tokens.size()-2)).getStopIndex());
+    }
+
+    @Test public void testPipelinedMatchesInline() throws Exception {
+        Grammar g = new Grammar(
+            "lexer grammar t;\n"+
+            "ID : 'a'..'z'+;\n" +
+            "INT : '0'..'9'+;\n" +
+            "SEMI : ';';\n" +
+            "WS : (' '|'\\n')+;\n");
+        StringBuffer buf = new StringBuffer();
+        for (int i=0; i<500; i++) buf.append("x 34;\n");
+        String text = buf.toString();
+        BufferedTokenStream expected =
+            new BufferedTokenStream(new Interpreter(g, new ANTLRStringStream(text)));
+        // tiny queue forces the lexer thread to wait on the parser
+        PipelinedTokenSource src =
+            new PipelinedTokenSource(new Interpreter(g, new ANTLRStringStream(text)), 8, 3);
+        BufferedTokenStream tokens = new BufferedTokenStream(src);
+        expected.fill();
+        tokens.fill();
+        assertEquals(expected.size(), tokens.size());
+        for (int i=0; i<tokens.size(); i++) {
+            assertEquals(expected.get(i).toString(), tokens.get(i).toString());
+        }
+        assertEquals(Token.EOF, src.nextToken().getType()); // EOF repeats
+    }
+
+    @Test public void testPipelinedPassesOnLexerFailure() throws Exception {
+        TokenSource lexer =
+            new TokenSource() {
+                int i = 0;
+                public Token nextToken() {
+                    if ( i==5 ) throw new IllegalArgumentException("bad char");
+                    return new CommonToken(1, String.valueOf(i++));
+                }
+                public String getSourceName() { return "test"; }
+            };
+        BufferedTokenStream tokens = new BufferedTokenStream(new PipelinedTokenSource(lexer, 4, 2));
+        assertEquals("4", tokens.LT(5).getText()); // tokens before the failure arrive
+        String msg = null;
+        try { tokens.LT(6); }
+        catch (IllegalArgumentException iae) { msg = iae.getMessage(); }
+        assertEquals("bad char", msg);
+    }
+
+    @Test public void testPipelinedStopsOnCancel() throws Exception {
+        TokenSource lexer =
+            new TokenSource() {
+                int i = 0;
+                public Token nextToken() { return new CommonToken(1, String.valueOf(i++)); }
+                public String getSourceName() { return "test"; }
+            };
+        PipelinedTokenSource src = new PipelinedTokenSource(lexer, 8, 2);
+        assertEquals("0", src.nextToken().getText());
+        src.cancel();
+        String msg = null;
+        try { // tokens queued before cancel() still arrive
+            for (int i=0; i<100; i++) src.nextToken();
+        }
+        catch (IllegalStateException ise) { msg = ise.getMessage(); }
+        assertEquals("lexer thread stopped without EOF", msg);
+    }
+
+    @Test public void testOnChannelIndexLookaheadAndSeek() throws Exception {
+        final int n = 200;
+        TokenSource lexer =
+            new TokenSource() {
+                int i = 0;
+                public Token nextToken() {
+                    if ( i>=n ) return new CommonToken(Token.EOF,"");
+                    CommonToken t = new CommonToken(1, String.valueOf(i));
+                    if ( i%4!=0 ) t.setChannel(Lexer.HIDDEN); // 3 hidden per real token
+                    i++;
+                    return t;
+                }
+                public String getSourceName() { return "test"; }
+            };
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        assertEquals("0", tokens.LT(1).getText());
+        assertEquals("40", tokens.LT(11).getText());
+        assertEquals(Token.EOF, tokens.LA(51));
+        assertEquals(Token.EOF, tokens.LA(60));
+        int m = tokens.mark();
+        for (int i=0; i<10; i++) tokens.consume();
+        assertEquals("40", tokens.LT(1).getText());
+        assertEquals("36", tokens.LT(-1).getText());
+        assertEquals("0", tokens.LT(-10).getText());
+        assertNull(tokens.LT(-11));
+        assertEquals("48", tokens.LT(3).getText());
+        tokens.rewind(m);
+        assertEquals("4", tokens.LT(2).getText());
+        tokens.seek(42); // off-channel; LT(1) is still what's there
+        assertEquals("42", tokens.LT(1).getText());
+        assertEquals("44", tokens.LT(2).getText());
+        assertEquals("40", tokens.LT(-1).getText());
+        tokens.consume();
+        assertEquals("44", tokens.LT(1).getText());
+        assertEquals(51, tokens.getNumberOfOnChannelTokens());
+    }
+
+    @Test public void testReindexAfterSetChannel() throws Exception {
+        CommonTokenStream tokens =
+            new CommonTokenStream(new TestCharStreams.RunLexer(new ANTLRStringStream("ab cd ef gh")));
+        tokens.fill();
+        assertEquals(" ", tokens.LT(2).getText());
+        for (int i=1; i<7; i+=2) tokens.get(i).setChannel(Lexer.HIDDEN); // spaces
+        assertEquals("cd", tokens.LT(2).getText()); // off channel is noticed
+        assertEquals("gh", tokens.LT(4).getText());
+        tokens.get(2).setChannel(Lexer.HIDDEN);
+        assertEquals("ef", tokens.LT(2).getText());
+        tokens.get(0).setChannel(Lexer.HIDDEN); // LT(1) itself
+        assertEquals("ef", tokens.LT(1).getText());
+        assertNull(tokens.LT(-1));
+        tokens.get(2).setChannel(Token.DEFAULT_CHANNEL);
+        assertNull(tokens.LT(-1)); // back on channel isn't noticed...
+        tokens.reindex(2);
+        assertEquals("cd", tokens.LT(-1).getText()); // ...until reindex()
+        tokens.get(2).setChannel(Lexer.HIDDEN);
+        tokens.consume();
+        assertEquals("gh", tokens.LT(1).getText());
+        assertEquals("ef", tokens.LT(-1).getText());
+        assertNull(tokens.LT(-2));
+    }
+
+    /** Edit text both incrementally and from scratch; compare tokens */
+    protected void checkEdit(IncrementalTokenStream tokens, StringBuffer text,
+                             int offset, int deleted, String inserted)
+    {
+        text.replace(offset, offset+deleted, inserted);
+        tokens.edit(offset, deleted, inserted);
+        checkRelex(tokens, text,
+                   new TestCharStreams.RunLexer(new ANTLRStringStream(text.toString())));
+    }
+
+    protected void checkRelex(IncrementalTokenStream tokens, StringBuffer text, Lexer fresh) {
+        CommonTokenStream expected = new CommonTokenStream(fresh);
+        expected.fill();
+        assertEquals(expected.size(), tokens.size());
+        for (int i=0; i<tokens.size(); i++) {
+            assertEquals(expected.get(i).toString(), tokens.get(i).toString());
+        }
+        assertEquals(text.toString(), tokens.toString());
+    }
+
+    @Test public void testIncrementalEdits() throws Exception {
+        StringBuffer text = new StringBuffer();
+        for (int i=0; i<100; i++) text.append("abc de\nf  g\n");
+        IncrementalTokenStream tokens =
+            new IncrementalTokenStream(new TestCharStreams.RunLexer(new ANTLRStringStream(text.toString())));
+        tokens.fill();
+        checkEdit(tokens, text, 4, 0, "x");            // extend "de"
+        assertTrue(tokens.getLastRelexCount()<=2);
+        checkEdit(tokens, text, 3, 1, "");             // join "abc" and "xde"
+        assertTrue(tokens.getLastRelexCount()<=2);
+        checkEdit(tokens, text, 10, 0, "q\nr s\n");   // add lines mid-document
+        assertTrue(tokens.getLastRelexCount()<10);
+        checkEdit(tokens, text, 0, 0, "  ");           // before first token
+        checkEdit(tokens, text, text.length(), 0, "zz"); // at end
+        checkEdit(tokens, text, 500, 300, "");         // big delete
+        assertEquals("abcxde", tokens.LT(2).getText());
+        assertEquals("q", tokens.LT(6).getText());
+    }
+
+    /** 'ab', 'abcd', 'c' and any other char; needs 4 chars of lookahead */
+    static class AbcdLexer extends TestCharStreams.WordLexer {
+        public static final int AB = 6;
+        public static final int ABCD = 7;
+        public AbcdLexer(CharStream input) { super(input); }
+        public void mTokens() throws RecognitionException {
+            if ( input.LA(1)=='a' && input.LA(2)=='b' && input.LA(3)=='c' && input.LA(4)=='d' ) {
+                state.type = ABCD;
+                match("abcd");
+                return;
+            }
+            if ( input.LA(1)=='a' && input.LA(2)=='b' ) {
+                state.type = AB;
+                match("ab");
+                return;
+            }
+            state.type = ID;
+            matchAny();
+        }
+    }
+
+    @Test public void testIncrementalRestartsWhereLookaheadReached() throws Exception {
+        StringBuffer text = new StringBuffer();
+        for (int i=0; i<50; i++) text.append("abce\n");
+        IncrementalTokenStream tokens =
+            new IncrementalTokenStream(new AbcdLexer(new ANTLRStringStream(text.toString())));
+        tokens.fill();
+        assertEquals("ab", tokens.get(0).getText());
+        text.replace(3, 4, "d");
+        tokens.edit(3, 1, "d"); // 'ab' must be relexed even though it ends before the edit
+        assertEquals("abcd", tokens.get(0).getText());
+        checkRelex(tokens, text, new AbcdLexer(new ANTLRStringStream(text.toString())));
+
+        int[][] edits = {{13,1}, {7,0}, {0,0}, {20,2}, {8,1}};
+        String[] inserted = {"d", "abc", "ab", "cd", ""};
+        for (int i=0; i<edits.length; i++) {
+            int offset = edits[i][0];
+            int deleted = edits[i][1];
+            text.replace(offset, offset+deleted, inserted[i]);
+            tokens.edit(offset, deleted, inserted[i]);
+            checkRelex(tokens, text, new AbcdLexer(new ANTLRStringStream(text.toString())));
+        }
+    }
+
+    @Test public void testTokenSnapshot() throws Exception {
+        String text = "ab cd\nef";
+        Lexer lexer = new TestCharStreams.RunLexer(new ANTLRStringStream(text));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+        tokens.get(2).setText("CD"); // not from input; goes in text table
+        File snap = new File(tmpdir, "snap.tokens");
+        mkdir(tmpdir);
+        TokenSnapshot.write(tokens, snap);
+
+        ANTLRStringStream input = new ANTLRStringStream(text);
+        long grammar = TokenSnapshot.grammarChecksum(lexer);
+        assertTrue(TokenSnapshot.isCurrent(snap, input, grammar));
+        MappedTokenStream mapped =
+            new MappedTokenStream(snap, input, grammar, Token.DEFAULT_CHANNEL, false);
+        mapped.fill();
+        assertEquals(tokens.getTokens().toString(), mapped.getTokens().toString());
+        assertEquals("ab CD\nef", mapped.toString());
+        assertEquals("CD", mapped.LT(3).getText());
+        assertEquals(Token.EOF, mapped.LA(6));
+        assertTrue(mapped.get(2) instanceof MappedTokenStream.SnapshotSource.TokenView);
+
+        // changing a mapped token copies it out of the read-only mapping
+        mapped.get(4).setText("EF");
+        assertEquals("EF", mapped.get(4).getText());
+        assertEquals(2, mapped.get(4).getLine());
+        assertEquals("ab CD\nEF", mapped.toString());
+
+        // stale: different input or grammar
+        ANTLRStringStream edited = new ANTLRStringStream("ab cd\neg");
+        assertFalse(TokenSnapshot.isCurrent(snap, edited, grammar));
+        assertFalse(TokenSnapshot.isCurrent(snap, input, grammar+1));
+        String msg = null;
+        try {
+            new MappedTokenStream(snap, edited, grammar);
+        }
+        catch (IOException ioe) {
+            msg = ioe.getMessage();
+        }
+        assertTrue(msg!=null && msg.endsWith("token snapshot is for different input"));
+    }
+
+    @Test public void testTokenSnapshotAllText() throws Exception {
+        Lexer lexer = new TestCharStreams.RunLexer(new ANTLRStringStream("ab cd"));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        File snap = new File(tmpdir, "snapText.tokens");
+        mkdir(tmpdir);
+        TokenSnapshot.write(tokens, snap, 42, true);
+        MappedTokenStream mapped = new MappedTokenStream(snap, null, 42); // no input needed
+        assertEquals("ab", mapped.LT(1).getText());
+        assertEquals("cd", mapped.LT(3).getText());
+        assertEquals("ab cd", mapped.toString());
+        assertEquals(tmpdir+File.separator+"snapText.tokens", mapped.getSourceName());
+    }
+
+    @Test public void testIncrementalRejectsOtherTokenBuffers() throws Exception {
+        IncrementalTokenStream tokens =
+            new IncrementalTokenStream(new TestCharStreams.RunLexer(new ANTLRStringStream("ab cd")));
+        String msg = null;
+        try { tokens.setTokenBuffer(new ColumnarTokenList()); }
+        catch (UnsupportedOperationException uoe) { msg = uoe.getMessage(); }
+        assertEquals("IncrementalTokenStream keeps its own token buffer", msg);
+    }
+}
@@ -63,6 +63,25 @@ public class TestCompositeGrammars extends BaseTest {
 		assertEquals("S.a\n", found);
 	}
 
+	@Test public void testRuleStackSpansDelegates() throws Exception {
+		String slave =
+			"parser grammar S;\n" +
+			"a : B {System.out.println(getRuleInvocationStack());} ;\n";
+		mkdir(tmpdir);
+		writeFile(tmpdir, "S.g", slave);
+		String master =
+			"grammar M;\n" +
+			"options {ruleStack=true;}\n" +
+			"import S;\n" +
+			"s : t {System.out.println(getRuleInvocationStack());} ;\n" +
+			"t : a ;\n" +
+			"B : 'b' ;" + // defines B from inherited token space
+			"WS : (' '|'\\n') {skip();} ;\n" ;
+		String found = execParser("M.g", master, "MParser", "MLexer",
+								  "s", "b", debug);
+		assertEquals("[s, t, a]\n[s]\n", found);
+	}
+
 	@Test public void testDelegatorInvokesDelegateRuleWithArgs() throws Exception {
 		// must generate something like:
 		// public int a(int x) throws RecognitionException { return gS.a(x); }
@@ -28,11 +28,13 @@
 package org.antlr.test;
 
 import org.antlr.runtime.misc.FastQueue;
+import org.antlr.runtime.misc.LookaheadStream;
 import org.junit.Test;
 
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestFastQueue {
     @Test public void testQueueNoRemove() throws Exception {
@@ -85,6 +87,52 @@ public class TestFastQueue {
         assertEquals(expecting, found);
     }
 
+    @Test public void testQueueWrapsWithoutGrowing() throws Exception {
+        FastQueue<Integer> q = new FastQueue<Integer>();
+        int next = 0;
+        for (int i=0; i<1000; i++) {
+            q.add(i);
+            q.add(i); // stay 1 ahead then drain
+            if ( q.size()>3 ) {
+                assertEquals(Integer.valueOf(next/2), q.remove());
+                next++;
+                assertEquals(Integer.valueOf(next/2), q.remove());
+                next++;
+            }
+        }
+        assertEquals(FastQueue.INITIAL_CAPACITY, q.capacity());
+        assertEquals(Integer.valueOf(next/2), q.elementAt(0));
+    }
+
+    static class Counter extends LookaheadStream<Integer> {
+        int next = 0;
+        public Integer nextElement() { return next++; }
+        public boolean isEOF(Integer o) { return false; }
+    }
+
+    @Test public void testLookaheadMarkSurvivesCompaction() throws Exception {
+        Counter s = new Counter();
+        for (int i=0; i<5000; i++) s.consume(); // no marks: nothing kept
+        assertEquals(FastQueue.INITIAL_CAPACITY, s.capacity());
+        int m = s.mark();
+        assertEquals(5000, m);
+        for (int i=0; i<100; i++) s.consume();
+        assertEquals(Integer.valueOf(5100), s.LT(1));
+        assertEquals(Integer.valueOf(5099), s.LT(-1));
+        s.rewind(m);
+        assertEquals(5000, s.index());
+        assertEquals(Integer.valueOf(5000), s.LT(1));
+        for (int i=0; i<5000; i++) {
+            int n = s.mark();
+            s.consume();
+            s.consume();
+            s.rewind(n);
+            s.consume();
+        }
+        assertEquals(Integer.valueOf(10000), s.LT(1));
+        assertTrue(s.capacity()<=128); // bounded by the 100 we held onto
+    }
+
     // E r r o r s
 
     @Test public void testGetFromEmptyQueue() throws Exception {
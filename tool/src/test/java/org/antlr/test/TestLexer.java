@@ -29,10 +29,17 @@ package org.antlr.test;
 
 import org.antlr.Tool;
 import org.antlr.codegen.CodeGenerator;
+import org.antlr.runtime.DFATableResource;
 import org.stringtemplate.v4.ST;
 import org.antlr.tool.Grammar;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class TestLexer extends BaseTest {
 	protected boolean debug = false;
 
@@ -251,4 +258,142 @@ public class TestLexer extends BaseTest {
 
         assertEquals(expecting, found);
     }
+
+	@Test public void testSplitAfterOption() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"options {splitAfter='\\n';}\n"+
+			"a : ID+ EOF {\n" +
+			"  ParallelLexer lexers = new ParallelLexer(new ParallelLexer.LexerFactory() {\n" +
+			"    public Lexer newLexer(CharStream in) { return new PLexer(in); }\n" +
+			"    public String getSplitAfterChars() { return PLexer.SPLIT_AFTER_CHARS; }\n" +
+			"  });\n" +
+			"  lexers.setMinChunkSize(1);\n" +
+			"  CommonTokenStream tokens = lexers.tokenize(new ANTLRStringStream(input.toString()));\n" +
+			"  System.out.println(tokens.getTokens()+\" \"+PLexer.SPLIT_AFTER_CHARS.equals(\"\\n\"));\n" +
+			"};\n"+
+			"ID : 'a'..'z'+ ;\n"+
+			"WS : (' '|'\\n') {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "ab\ncd\n ef", debug);
+		assertEquals("[[@0,0:1='ab',<4>,1:0], [@1,2:2='\\n',<5>,channel=99,1:2], "+
+					 "[@2,3:4='cd',<4>,2:0], [@3,5:5='\\n',<5>,channel=99,2:2], "+
+					 "[@4,6:6=' ',<5>,channel=99,3:0], [@5,7:8='ef',<4>,3:1], "+
+					 "[@6,9:9='<EOF>',<-1>,3:3]] true\n", found);
+	}
+
+	@Test public void testCharClassIndexedDFA() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"a : (tok {System.out.print($tok.start.getType()+\":\"+$tok.text+\" \");})* EOF\n" +
+			"    {System.out.println(PLexer.DFA_charClass.length);} ;\n"+
+			"tok : KW | ID | INT | FLOAT | OP ;\n"+
+			"KW : 'while' ;\n"+
+			"ID : ('a'..'z'|'\\u00C0'..'\\uFFFE') ('a'..'z'|'0'..'9'|'\\u00C0'..'\\uFFFE')* ;\n"+
+			"INT : '0'..'9'+ ;\n"+
+			"FLOAT : '0'..'9'+ '.' '0'..'9'* ;\n"+
+			"OP : '=' | '==' | '=>' ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "while whilex xyz=>12 ab==3.14 y9 =", debug);
+		assertEquals("7:while 5:whilex 5:xyz 8:=> 6:12 5:ab 8:== 4:3.14 5:y9 8:= 65536\n", found);
+	}
+
+	@Test public void testDFATablesInResource() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"options {dfaTables=resource;}\n"+
+			"a : stat+ EOF\n" +
+			"    {System.out.println(PParser.class.getResource(\"PParser.dfa\")!=null);} ;\n"+
+			"stat : ID+ '=' (INT|FLOAT) ';' {System.out.print(\"assign \");}\n"+
+			"     | ID+ ';' {System.out.print(\"call \");}\n"+
+			"     ;\n"+
+			"ID : ('a'..'z'|'\\u00C0'..'\\uFFFE') ('a'..'z'|'0'..'9'|'\\u00C0'..'\\uFFFE')* ;\n"+
+			"INT : '0'..'9'+ ;\n"+
+			"FLOAT : '0'..'9'+ '.' '0'..'9'* ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "a b = 12; f x y; pi = 3.14;", debug);
+		assertEquals("assign call assign true\n", found);
+		assertTrue(new java.io.File(tmpdir, "PLexer.dfa").exists());
+	}
+
+	@Test public void testStaleDFATablesRefused() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(DFATableResource.MAGIC);
+		out.writeInt(DFATableResource.VERSION);
+		out.writeLong(0x1234L); // tables from an older grammar
+		out.writeInt(2);
+		out.close();
+		final byte[] data = bytes.toByteArray();
+		String msg = new DFATableResource(TestLexer.class, "PParser.dfa", 0xabcdL, 3) {
+			String tryRead() {
+				try { read(new DataInputStream(new ByteArrayInputStream(data))); }
+				catch (IOException ioe) { return ioe.getMessage(); }
+				return null;
+			}
+		}.tryRead();
+		assertEquals("PParser.dfa is stale: it has 2 DFAs for grammar checksum 0x1234"+
+					 " but org.antlr.test.TestLexer was generated with 3 for 0xabcd;"+
+					 " copy the PParser.dfa generated with it to the classpath", msg);
+	}
+
+	@Test public void testGrammarChecksumAndSnapshot() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"a : ID+ EOF {\n" +
+			"  try {\n" +
+			"    CharStream in = new ANTLRStringStream(input.toString());\n" +
+			"    PLexer lex = new PLexer(in);\n" +
+			"    java.io.File snap = java.io.File.createTempFile(\"snap\", \".tokens\");\n" +
+			"    snap.deleteOnExit();\n" +
+			"    TokenSnapshot.write(new CommonTokenStream(lex), snap);\n" +
+			"    MappedTokenStream tokens = new MappedTokenStream(snap, new PLexer(in));\n" +
+			"    tokens.fill();\n" +
+			"    System.out.println(tokens.getTokens());\n" +
+			"    new PParser(tokens).b();\n" +
+			"    System.out.println(lex.getGrammarChecksum()!=0);\n" +
+			"  }\n" +
+			"  catch (java.io.IOException ioe) { System.out.println(ioe); }\n" +
+			"};\n"+
+			"b : ID+ EOF {System.out.println($text);} ;\n"+
+			"ID : 'a'..'z'+ ;\n"+
+			"WS : ' ' {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "ab cd", debug);
+		assertEquals("[[@0,0:1='ab',<4>,1:0], [@1,2:2=' ',<5>,channel=99,1:2], "+
+					 "[@2,3:4='cd',<4>,1:3], [@3,5:5='<EOF>',<-1>,1:5]]\nab cd\ntrue\n", found);
+	}
+
+	@Test public void testLineAndPosInLineIndexedLexer() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"a : ID+ EOF {\n" +
+			"  ANTLRStringStream in = new ANTLRStringStream(input.toString());\n" +
+			"  in.setLineIndexed(true);\n" +
+			"  new CommonTokenStream(new PLexer(in)).fill();\n" +
+			"};\n"+
+			"ID : 'a'..'z'+ {System.out.println($text+\" \"+$line+\":\"+$pos);} ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "ab\n cd", debug);
+		assertEquals("ab 1:0\ncd 2:1\nab 1:0\ncd 2:1\n", found);
+	}
+
+	@Test public void testSetLineAndPosInLexerAction() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"a : ids+=ID+ EOF {\n" +
+			"  for (Object o : $ids) {\n" +
+			"    Token t = (Token)o;\n" +
+			"    System.out.println(t.getText()+\" \"+t.getLine()+\":\"+t.getCharPositionInLine());\n" +
+			"  }\n" +
+			"};\n"+
+			"ID : 'a'..'z'+ {$line = 10; $pos = $pos+1; System.out.println($line+\":\"+$pos);} ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "ab\n cd", debug);
+		assertEquals("10:1\n10:2\nab 10:1\ncd 10:2\n", found);
+	}
 }
@@ -0,0 +1,73 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2010 Terence Parr
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.misc.MemoTable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestMemoTable {
+	@Test public void testPutGetGrows() throws Exception {
+		MemoTable t = new MemoTable();
+		for (int i=0; i<1000; i++) t.put(i*7, i);
+		t.put(14, -2); // replace
+		assertEquals(1000, t.size());
+		assertEquals(-2, t.get(14, -1));
+		assertEquals(999, t.get(999*7, -1));
+		assertEquals(-1, t.get(3, -1));
+		assertEquals(2, t.hits);
+		assertEquals(1, t.misses);
+		assertEquals(0, t.evictions);
+	}
+
+	@Test public void testCapEvictsLowestKeys() throws Exception {
+		MemoTable t = new MemoTable(4);
+		for (int i=0; i<4; i++) t.put(i, i+100);
+		t.put(10, 110); // evicts 0 and 1
+		assertEquals(3, t.size());
+		assertEquals(2, t.evictions);
+		assertEquals(-1, t.get(0, -1));
+		assertEquals(-1, t.get(1, -1));
+		assertEquals(102, t.get(2, -1));
+		assertEquals(110, t.get(10, -1));
+		t.put(11, 111);
+		t.put(2, 0); // full but present, so no eviction
+		assertEquals(4, t.size());
+		assertEquals(2, t.evictions);
+	}
+
+	@Test public void testCapOfOne() throws Exception {
+		MemoTable t = new MemoTable(1);
+		t.put(5, 1);
+		t.put(3, 2);
+		assertEquals(1, t.size());
+		assertEquals(1, t.evictions);
+		assertEquals(2, t.get(3, -1));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2010 Terence Parr
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.junit.Test;
+
+public class TestRecognizerPool extends BaseTest {
+	static final String members =
+		"@members {\n" +
+		"static RecognizerPool<TLexer,TParser> pool = new RecognizerPool<TLexer,TParser>(\n" +
+		"  new RecognizerPool.Factory<TLexer,TParser>() {\n" +
+		"    public TLexer newLexer() { return new TLexer(); }\n" +
+		"    public TParser newParser(CommonTokenStream tokens) {\n" +
+		"      TParser p = new TParser(tokens);\n" +
+		"      p.setErrorStrategy(new BailErrorStrategy());\n" +
+		"      return p;\n" +
+		"    }\n" +
+		"  });\n" +
+		"static void parse(String text) {\n" +
+		"  RecognizerPool.Lease<TLexer,TParser> lease = pool.lease(new ANTLRStringStream(text));\n" +
+		"  try {\n" +
+		"    lease.parser.list();\n" +
+		"    System.out.println(text+\" ok \"+lease.parser.getNumberOfSyntaxErrors());\n" +
+		"  }\n" +
+		"  catch (Exception e) { System.out.println(text+\" \"+e.getClass().getSimpleName()); }\n" +
+		"  finally { lease.release(); }\n" +
+		"}\n" +
+		"static void stats() {\n" +
+		"  System.out.println(pool.getLeaseCount()+\" \"+pool.getCreatedCount()+\" \"+\n" +
+		"    pool.getDiscardedCount()+\" \"+pool.getInUse()+\" \"+pool.getPeakInUse()+\" \"+\n" +
+		"    pool.getIdleCount()+\" \"+pool.getHitRate());\n" +
+		"}\n" +
+		"}\n";
+
+	@Test public void testReuseAfterException() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			members +
+			"start : {parse(\"a b\"); parse(\"a 1\"); parse(\"b c d\"); stats();} ;\n" +
+			"list : ID+ EOF ;\n" +
+			"ID : 'a'..'z'+ ;\n" +
+			"INT : '0'..'9'+ ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "start", "", false);
+		String expecting =
+			"a b ok 0\n" +
+			"a 1 RecognitionCancelledException\n" +
+			"b c d ok 0\n" +
+			"3 1 0 0 1 1 0.6666666666666666\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testConcurrentLeases() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			members +
+			"start\n" +
+			"  : {RecognizerPool.Lease<TLexer,TParser> outer = pool.lease(new ANTLRStringStream(\"x y\"));\n" +
+			"     parse(\"a\");\n" +
+			"     outer.parser.list();\n" +
+			"     outer.release();\n" +
+			"     parse(\"b\");\n" +
+			"     stats();\n" +
+			"     try { outer.release(); } catch (IllegalStateException e) { System.out.println(\"twice\"); }}\n" +
+			"  ;\n" +
+			"list : ID+ EOF ;\n" +
+			"ID : 'a'..'z'+ ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "start", "", false);
+		String expecting =
+			"a ok 0\n" +
+			"b ok 0\n" +
+			"3 2 0 0 2 2 0.3333333333333333\n" +
+			"twice\n";
+		assertEquals(expecting, found);
+	}
+}
@@ -53,6 +53,31 @@ public class TestSemanticPredicateEvaluation extends BaseTest {
 		assertEquals("alt2\n", found);
 	}
 
+	@Test public void testCyclicDFAPredictsWithoutMarking() throws Exception {
+		// preds see the input at the start of the decision; the DFA
+		// scans ahead with LA(k) so the stream never marks or rewinds
+		String grammar =
+			"grammar foo;\n" +
+			"@members {\n" +
+			"static class Counting extends CommonTokenStream {\n" +
+			"    int marks = 0;\n" +
+			"    Counting(TokenSource src) { super(src); }\n" +
+			"    public int mark() { marks++; return super.mark(); }\n" +
+			"}\n" +
+			"}\n" +
+			"s : {\n" +
+			"    Counting tokens = new Counting(new fooLexer(new ANTLRStringStream(\"xxxy\")));\n" +
+			"    new fooParser(tokens).a();\n" +
+			"    System.out.println(tokens.marks);\n" +
+			"  } ;\n" +
+			"a : {input.index()==0}? 'x'* 'y' {System.out.println(\"alt1\");}\n" +
+			"  | {true}? 'x'* 'y' {System.out.println(\"alt2\");}\n" +
+			"  ;\n" ;
+		String found = execParser("foo.g", grammar, "fooParser", "fooLexer",
+				    "s", "", false);
+		assertEquals("alt1\n0\n", found);
+	}
+
 	@Test public void testPredicateValidation() throws Exception {
 		String grammar =
 			"grammar foo;\n" +
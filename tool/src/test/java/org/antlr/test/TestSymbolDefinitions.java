@@ -736,6 +736,23 @@ public class TestSymbolDefinitions extends BaseTest {
 		checkGrammarSemanticsError(equeue, expectedMessage);
 	}
 
+	@Test public void testBadDFATablesOptionValue() throws Exception {
+		ErrorQueue equeue = new ErrorQueue();
+		ErrorManager.setErrorListener(equeue); // unique listener per thread
+		Tool antlr = newTool();
+		Grammar g = new Grammar(antlr,
+								"grammar t;\n"+
+								"options {dfaTables=inline;}\n" +
+								"a : 'a';\n");
+
+		Object expectedArg = "dfaTables";
+		int expectedMsgID = ErrorManager.MSG_ILLEGAL_OPTION_VALUE;
+		GrammarSemanticsMessage expectedMessage =
+			new GrammarSemanticsMessage(expectedMsgID, g, null, expectedArg);
+		checkGrammarSemanticsError(equeue, expectedMessage);
+		assertNull(g.getOption("dfaTables"));
+	}
+
 	@Test public void testBadRuleOption() throws Exception {
 		ErrorQueue equeue = new ErrorQueue();
 		ErrorManager.setErrorListener(equeue); // unique listener per thread
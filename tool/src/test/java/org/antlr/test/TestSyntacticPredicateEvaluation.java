@@ -79,6 +79,138 @@ public class TestSyntacticPredicateEvaluation extends BaseTest {
 		assertEquals(expecting, found);
 	}
 
+	@Test public void testBoundedMemoization() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {backtrack=true; memoize=true;}\n" +
+			"s\n" +
+			"@init {state.ruleMemoMaxSize=1;}\n" +
+			"  : a+ EOF\n" +
+			"    {System.out.println(getRuleMemoizationHits()>0);\n" +
+			"     System.out.println(getRuleMemoizationEvictions()>0);\n" +
+			"     System.out.println(state.ruleMemoTables[3].size());}\n" +
+			"  ;\n" +
+			"a : b '.' {System.out.println(\"alt 1\");}\n" +
+			"  | b '!' {System.out.println(\"alt 2\");}\n" +
+			"  | b ';' {System.out.println(\"alt 3\");}\n" +
+			"  ;\n" +
+			"b : '(' b ')' | 'x' ;\n" +
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+			"   ;\n" ;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "((x))! (x); x.", false);
+		String expecting =
+			"alt 2\n" +
+			"alt 3\n" +
+			"alt 1\n" +
+			"true\n" +
+			"true\n" +
+			"1\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testSynpredOutcomesMemoized() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {backtrack=true; memoize=true;}\n" +
+			"s : x ';' {System.out.println(\"alt 1\");}\n" +
+			"  | x '!' {System.out.println(\"alt 2\");}\n" +
+			"  ;\n" +
+			"  finally {\n" +
+			"    int hits = 0;\n" +
+			"    for (int i=0; i<synpredMemo.length; i++) if (synpredMemo[i]!=null) hits += synpredMemo[i].hits;\n" +
+			"    System.out.println(hits>0);\n" +
+			"    reset();\n" +
+			"    System.out.println(getSynpredMemoization(1, 0)==MEMO_RULE_UNKNOWN);\n" +
+			"  }\n" +
+			"x : (a '.')=> a '.' | a ;\n" +
+			"a : '(' a ')' | 'i' ;\n" +
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+			"   ;\n" ;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "((i)) !", false);
+		String expecting =
+			"alt 2\n" +
+			"true\n" +
+			"true\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testBacktrackingDepthBudget() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {backtrack=true;}\n" +
+			"start\n" +
+			"@init {state.maxBacktrackingDepth = 1;}\n" +
+			"  : {try { s(); }\n" +
+			"     catch (BacktrackingBudgetExceededException e) {\n" +
+			"       System.out.println(e.getMessage()+\" at level \"+e.backtracking);\n" +
+			"     }}\n" +
+			"  ;\n" +
+			"s : x ';' {System.out.println(\"alt 1\");}\n" +
+			"  | x '!' {System.out.println(\"alt 2\");}\n" +
+			"  ;\n" +
+			"x : (a '.')=> a '.' | a ;\n" +
+			"a : '(' a ')' | 'i' ;\n" +
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+			"   ;\n" ;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "start", "((i)) !", false);
+		String expecting =
+			"backtracking depth limit exceeded at decision 2, index 0 at level 2\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testSpeculativeTokenBudget() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {backtrack=true; memoize=true;}\n" +
+			"start\n" +
+			"@init {state.maxSpeculativeTokens = 10;}\n" +
+			"  : {try { s(); s(); }\n" +
+			"     catch (BacktrackingBudgetExceededException e) {\n" +
+			"       System.out.println(e.getMessage());\n" +
+			"     }}\n" +
+			"  ;\n" +
+			"s : 'i'* x ';' {System.out.println(\"alt 1\");}\n" +
+			"  | 'i'* x '!' {System.out.println(\"alt 2\");}\n" +
+			"  ;\n" +
+			"x : (a '.')=> a '.' | a ;\n" +
+			"a : '(' a ')' | 'i' ;\n" +
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+			"   ;\n" ;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "start", "i (i) ; i i ((i)) !", false);
+		String expecting =
+			"alt 1\n" +
+			"backtracking speculative tokens limit exceeded at decision 3, index 8\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testSpeculativeTokenBudgetWithinOnePredicate() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {backtrack=true;}\n" +
+			"start\n" +
+			"@init {state.maxSpeculativeTokens = 3;}\n" +
+			"  : {try { s(); }\n" +
+			"     catch (BacktrackingBudgetExceededException e) {\n" +
+			"       System.out.println(e.getMessage());\n" +
+			"       System.out.println(state.backtracking+\" \"+input.index());\n" +
+			"     }}\n" +
+			"  ;\n" +
+			"s : e ';' {System.out.println(\"alt 1\");}\n" +
+			"  | e '!' {System.out.println(\"alt 2\");}\n" +
+			"  ;\n" +
+			"e : '(' e ')' | 'i' ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "start", "((((((i))))));", false);
+		String expecting = // trips in the first predicate; rewound on the way out
+			"backtracking speculative tokens limit exceeded at decision -1, index 4\n" +
+			"0 0\n";
+		assertEquals(expecting, found);
+	}
+
 	@Test public void testTwoPredsWithNakedAltNotLast() throws Exception {
 		String grammar =
 			"grammar T;\n" +
@@ -109,4 +109,142 @@ public class TestSyntaxErrors extends BaseTest {
 		String expecting = "{HARDWARE,SOFTWARE}\n";
 		assertEquals(expecting, result);
 	}
+
+	@Test public void testBailOnMissingToken() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"start\n" +
+			"@init {setErrorStrategy(new BailErrorStrategy());}\n" +
+			"  : {try { a(); }\n" +
+			"     catch (RecognitionCancelledException e) {\n" +
+			"       System.out.println(e.error.getClass().getSimpleName()+\" \"+getNumberOfSyntaxErrors());\n" +
+			"       System.out.println(e.getMessage());\n" +
+			"     }}\n" +
+			"  ;\n" +
+			"a : 'a' 'b' 'c' {System.out.println(\"matched\");} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "start", "ac", false);
+		String expecting =
+			"MismatchedTokenException 1\n" +
+			"line 1:1 mismatched input 'c' expecting 'b'\n";
+		assertEquals(expecting, found);
+		assertNull(stderrDuringParse);
+	}
+
+	@Test public void testBailInLexer() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"start\n" +
+			"@init {((Lexer)input.getTokenSource()).setErrorStrategy(new BailErrorStrategy());}\n" +
+			"  : {try { a(); }\n" +
+			"     catch (RecognitionCancelledException e) {\n" +
+			"       System.out.println(e.getMessage());\n" +
+			"     }}\n" +
+			"  ;\n" +
+			"a : ID+ {System.out.println(\"matched\");} ;\n" +
+			"ID : 'a'..'z'+ ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "start", "ab c#d", false);
+		String expecting = "line 1:4 no viable alternative at character '#'\n";
+		assertEquals(expecting, found);
+		assertNull(stderrDuringParse);
+	}
+
+	@Test public void testStacklessExceptionsKeepRuleStack() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {ruleStack=true;}\n" +
+			"@members {\n" +
+			"public void displayRecognitionError(String[] tokenNames, RecognitionException e) {\n" +
+			"  super.displayRecognitionError(tokenNames, e);\n" +
+			"  System.out.println(e.getStackTrace().length+\" \"+getRuleInvocationStack(e, getClass().getName()));\n" +
+			"}\n" +
+			"}\n" +
+			"a\n" +
+			"@init {RecognitionException.captureStackTraces = false;}\n" +
+			"  : b ;\n" +
+			"b : 'x' c ;\n" +
+			"c : 'y' b | 'z' ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "a", "x x", false);
+		assertEquals("0 [a, b, c]\n", found);
+		assertEquals("line 1:2 no viable alternative at input 'x'\n", stderrDuringParse);
+	}
+
+	@Test public void testStacklessExceptionsWithoutRuleStack() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"@members {\n" +
+			"public void displayRecognitionError(String[] tokenNames, RecognitionException e) {\n" +
+			"  super.displayRecognitionError(tokenNames, e);\n" +
+			"  System.out.println(e.ruleInvocationStack+\" \"+getRuleInvocationStack(e, getClass().getName()));\n" +
+			"}\n" +
+			"}\n" +
+			"a\n" +
+			"@init {RecognitionException.captureStackTraces = false;}\n" +
+			"  : b ;\n" +
+			"b : 'x' c ;\n" +
+			"c : 'y' b | 'z' ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "a", "x x", false);
+		assertEquals("null []\n", found); // no stack to walk either
+		assertEquals("line 1:2 no viable alternative at input 'x'\n", stderrDuringParse);
+	}
+
+	@Test public void testLexerReusesStacklessExceptions() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"@lexer::members {\n" +
+			"RecognitionException last;\n" +
+			"public void reportError(RecognitionException e) {\n" +
+			"  System.out.println((e==last)+\" \"+e.index+\" \"+e.getStackTrace().length);\n" +
+			"  last = e;\n" +
+			"}\n" +
+			"}\n" +
+			"a\n" +
+			"@init {RecognitionException.captureStackTraces = false;}\n" +
+			"  : A+ ;\n" +
+			"A : 'ab' ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "a", "ac ab ac", false);
+		String expecting =
+			"false 1 0\n" +
+			"true 7 0\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testRuleStackOption() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {ruleStack=true;}\n" +
+			"@members {\n" +
+			"public void displayRecognitionError(String[] tokenNames, RecognitionException e) {\n" +
+			"  System.out.println(getRuleInvocationStack(e, getClass().getName()));\n" +
+			"}\n" +
+			"}\n" +
+			"a\n" +
+			"@init {RecognitionException.captureStackTraces = false;}\n" +
+			"  : b b {System.out.println(getRuleInvocationStack());} ;\n" +
+			"b : 'x' c ;\n" +
+			"c : 'y' | 'z' {System.out.println(getRuleInvocationStack());} ;\n" +
+			"WS : ' ' {skip();} ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "a", "x z x x", false);
+		String expecting =
+			"[a, b, c]\n" +
+			"[a, b, c]\n" +
+			"[a]\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testRuleStackPoppedWhenInitThrows() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {ruleStack=true;}\n" +
+			"s : a {System.out.println(getRuleInvocationStack());} ;\n" +
+			"a : b 'y' ;\n" +
+			"b\n" +
+			"@init {if ( true ) throw new FailedPredicateException(input, \"b\", \"init\");}\n" +
+			"  : 'x' ;\n";
+		String found = execParser("T.g", grammar, "TParser", "TLexer", "s", "xy", false);
+		assertEquals("[s]\n", found);
+	}
 }
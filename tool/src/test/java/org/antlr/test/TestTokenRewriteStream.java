@@ -29,6 +29,7 @@ package org.antlr.test;
 
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
+import org.antlr.runtime.ColumnarTokenList;
 import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.tool.Grammar;
 import org.antlr.tool.Interpreter;
@@ -805,4 +806,23 @@ public class TestTokenRewriteStream extends BaseTest {
 		assertEquals(expecting, result);
 	}
 
+
+	@Test public void testColumnarTokenBuffer() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar t;\n"+
+			"A : 'a';\n" +
+			"B : 'b';\n" +
+			"C : 'c';\n");
+		CharStream input = new ANTLRStringStream("abcccba");
+		Interpreter lexEngine = new Interpreter(g, input);
+		TokenRewriteStream tokens = new TokenRewriteStream(lexEngine);
+		tokens.setTokenBuffer(new ColumnarTokenList());
+		tokens.fill();
+		tokens.replace(2, 4, "x");
+		tokens.insertBefore(6, "y");
+		String result = tokens.toString();
+		String expecting = "abxbya";
+		assertEquals(expecting, result);
+		assertEquals("abcccba", tokens.toOriginalString());
+	}
 }
@@ -47,6 +47,21 @@ public class TestTrees extends BaseTest {
 		public String toString() { return (token!=null?token.getText():"")+"<V>";}
 	}
 
+	static class Bracketed extends CommonTree {
+		public Bracketed(Token t) { super(t); }
+		public String toStringTree() { return "["+super.toStringTree()+"]"; }
+	}
+
+	@Test public void testToStringTreeOverrideInChild() throws Exception {
+		// ^(a ^(b c) d) with ^(b c) printing itself
+		CommonTree t = new CommonTree(new CommonToken(99, "a"));
+		Bracketed b = new Bracketed(new CommonToken(99, "b"));
+		b.addChild(new CommonTree(new CommonToken(99, "c")));
+		t.addChild(b);
+		t.addChild(new Bracketed(new CommonToken(99, "d")));
+		assertEquals("(a [(b c)] [d])", t.toStringTree());
+	}
+
 	@Test public void testSingleNode() throws Exception {
 		CommonTree t = new CommonTree(new CommonToken(101));
 		assertNull(t.parent);